@@ -0,0 +1,567 @@
+package com.laytonsmith.PureUtilities;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A write-behind persistance database. Rather than rewriting the whole database on
+ * every change, like SerializedPersistance does, each change is queued as a small record,
+ * and a background thread appends the queued records to a journal file. Once the journal
+ * grows large enough, it is compacted: the whole database is written out as a snapshot, and
+ * the journal is emptied. The writer builds the new snapshot by replaying the journal over the
+ * old snapshot file, rather than by copying the live data, so compacting never holds up the
+ * threads using the database, however big it is. When the database is loaded, the snapshot is read, then the journal
+ * is replayed on top of it, so changes that were journaled but not yet compacted survive a crash.
+ * A partially written record at the end of the journal (from a crash mid-write) is discarded.
+ * <p>
+ * The snapshot is in the same format as SerializedPersistance's database, so an existing
+ * persistance.ser can be used directly as the snapshot, and since the journal is compacted
+ * when the database is closed, the file can be handed back to SerializedPersistance as well.
+ * @author layton
+ */
+public class JournaledPersistance implements Persistance {
+
+    private static final byte OP_SET_STRING = 0;
+    private static final byte OP_SET_OBJECT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    /**
+     * How long the writer waits for more changes before flushing them, in ms.
+     */
+    private static final long FLUSH_INTERVAL = 1000;
+    /**
+     * Once the journal is at least this big, and bigger than the last snapshot,
+     * it is compacted.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+    /**
+     * The longest the writer waits between attempts, in ms, once writing has started
+     * failing. It starts at FLUSH_INTERVAL, and doubles after each failed attempt.
+     */
+    private static final long MAX_RETRY_DELAY = 60 * 1000;
+
+    private HashMap<String, Serializable> data = new HashMap<String, Serializable>();
+    private final NamespaceIndex index = new NamespaceIndex();
+    private boolean isLoaded = false;
+    private final File snapshotLocation;
+    private final File journalLocation;
+    /**
+     * Where the old snapshot is moved while the new one is put in place, on systems
+     * that won't rename over an existing file.
+     */
+    private final File backupLocation;
+
+    /**
+     * Records waiting to be written to the journal. Guarded by the lock on this object,
+     * along with the data, so the records are journaled in the order the changes were made.
+     */
+    private List<byte[]> pending = new ArrayList<byte[]>();
+    private Thread writer;
+    private volatile boolean closed = false;
+    private boolean compactionRequested = false;
+    /**
+     * The number of records queued so far, and the number of those that the writer
+     * has finished with, so that save() can tell when its changes are on disk.
+     */
+    private long queued = 0;
+    private long written = 0;
+    /**
+     * The error from the writer's last attempt to write out changes, or null if it
+     * succeeded. While this is set, the changes are still queued, and are retried.
+     */
+    private IOException failure = null;
+    private long journalSize = 0;
+    private long snapshotSize = 0;
+
+    /**
+     * Creates a new journaled database. The journal is stored next to the snapshot,
+     * with ".journal" appended to the name.
+     * @param database The snapshot file. This may be an existing persistance.ser file.
+     */
+    public JournaledPersistance(File database){
+        snapshotLocation = database;
+        journalLocation = new File(database.getPath() + ".journal");
+        backupLocation = new File(database.getPath() + ".old");
+    }
+
+    /**
+     * Loads the snapshot, then replays the journal on top of it, and starts
+     * the writer thread. This is automatically called when the database is first used.
+     * @throws Exception
+     */
+    public synchronized void load() throws Exception {
+        if(isLoaded){
+            return;
+        }
+        if(closed){
+            throw new IOException("This database has been closed");
+        }
+        data = readSnapshot();
+        if(journalLocation.exists()){
+            journalSize = replay(data);
+        }
+        index.rebuild(data.keySet());
+        isLoaded = true;
+        writer = new Thread(new Runnable() {
+
+            public void run() {
+                writeBehind();
+            }
+        }, "CommandHelperPersistanceWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reads the snapshot file, or returns an empty map if there isn't one yet.
+     */
+    private HashMap<String, Serializable> readSnapshot() throws IOException {
+        File source = snapshotLocation;
+        if(!source.exists() && backupLocation.exists()){
+            //We crashed while swapping in a new snapshot. The journal wasn't emptied
+            //yet, so replaying it over the old snapshot gets us back to where we were.
+            source = backupLocation;
+        }
+        if(!source.exists()){
+            snapshotSize = 0;
+            return new HashMap<String, Serializable>();
+        }
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(source)));
+        try{
+            HashMap<String, Serializable> map = (HashMap<String, Serializable>) in.readObject();
+            snapshotSize = source.length();
+            return map;
+        } catch(ClassNotFoundException e){
+            throw new IOException("Could not read " + source, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Applies each intact record in the journal to the map, and truncates away
+     * anything after the last intact record.
+     * @return The length of the intact part of the journal
+     * @throws IOException
+     */
+    private long replay(Map<String, Serializable> map) throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(journalLocation, "rw");
+        try{
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal.getFD())));
+            long good = 0;
+            long length = journal.length();
+            CRC32 crc = new CRC32();
+            while(good + 12 <= length){
+                int size = in.readInt();
+                long checksum = in.readLong();
+                if(size < 1 || good + 12 + size > length){
+                    break;
+                }
+                byte[] record = new byte[size];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if(crc.getValue() != checksum){
+                    break;
+                }
+                try{
+                    apply(map, record);
+                } catch(ClassNotFoundException e){
+                    Logger.getLogger(JournaledPersistance.class.getName()).log(Level.SEVERE, "Skipping unreadable journal entry", e);
+                }
+                good += 12 + size;
+            }
+            if(good < length){
+                Logger.getLogger(JournaledPersistance.class.getName()).log(Level.WARNING,
+                        "Discarding {0} byte(s) of incomplete data at the end of {1}", new Object[]{length - good, journalLocation});
+                journal.setLength(good);
+            }
+            return good;
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static void apply(Map<String, Serializable> map, byte[] record) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte op = in.readByte();
+        if(op == OP_CLEAR){
+            map.clear();
+            return;
+        }
+        String key = in.readUTF();
+        if(op == OP_REMOVE){
+            map.remove(key);
+        } else if(op == OP_SET_STRING){
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            map.put(key, new String(value, "UTF-8"));
+        } else if(op == OP_SET_OBJECT){
+            map.put(key, (Serializable) new ObjectInputStream(in).readObject());
+        } else {
+            throw new IOException("Unknown journal operation " + op);
+        }
+    }
+
+    private static byte[] record(byte op, String key, Serializable value) {
+        try{
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            if(op != OP_CLEAR){
+                out.writeUTF(key);
+            }
+            if(op == OP_SET_STRING){
+                byte[] s = ((String) value).getBytes("UTF-8");
+                out.writeInt(s.length);
+                out.write(s);
+            } else if(op == OP_SET_OBJECT){
+                ObjectOutputStream oos = new ObjectOutputStream(out);
+                oos.writeObject(value);
+                oos.flush();
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch(IOException e){
+            //Writing to a byte array doesn't fail, unless the value can't be serialized
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * The writer thread's loop. Waits for changes, appends them to the journal,
+     * and compacts the journal when it gets too big. If writing fails, the changes
+     * are kept, and tried again after a delay that grows with each failure. The lock
+     * is only held to take the waiting changes, never while writing or compacting.
+     */
+    private void writeBehind() {
+        long retryDelay = 0;
+        while(true){
+            List<byte[]> batch;
+            boolean compact = false;
+            boolean done;
+            long batchEnd;
+            synchronized(this){
+                if(retryDelay > 0){
+                    long until = System.currentTimeMillis() + retryDelay;
+                    long now;
+                    while(!closed && (now = System.currentTimeMillis()) < until){
+                        try{
+                            wait(until - now);
+                        } catch(InterruptedException e){
+                            break;
+                        }
+                    }
+                } else if(pending.isEmpty() && !compactionRequested && !closed){
+                    try{
+                        wait(FLUSH_INTERVAL);
+                    } catch(InterruptedException e){
+                        //Flush what we have and carry on
+                    }
+                }
+                done = closed;
+                batch = pending;
+                batchEnd = queued;
+                pending = new ArrayList<byte[]>();
+                if(compactionRequested || done || (journalSize >= MIN_COMPACTION_SIZE && journalSize > snapshotSize)){
+                    compact = true;
+                    compactionRequested = false;
+                }
+            }
+            IOException compactError = null;
+            IOException writeError = tryAppend(batch);
+            if(compact && writeError == null){
+                //The snapshot file plus the journal now hold exactly the changes up to the
+                //end of this batch, so they make the new snapshot. Changes made since then
+                //are still pending, and go in the new journal.
+                try{
+                    HashMap<String, Serializable> snapshot = readSnapshot();
+                    replay(snapshot);
+                    compact(snapshot);
+                } catch(IOException e){
+                    //The journal is still intact, so it will be compacted next time around
+                    compactError = e;
+                }
+            }
+            Logger logger = Logger.getLogger(JournaledPersistance.class.getName());
+            if(writeError == null && compactError == null){
+                if(retryDelay > 0){
+                    logger.log(Level.INFO, "Writing to {0} works again", journalLocation);
+                }
+                retryDelay = 0;
+            } else {
+                if(retryDelay == 0 || done){
+                    //Only the first failure in a row is logged, so a full disk doesn't flood the log
+                    if(compactError != null){
+                        logger.log(Level.SEVERE, "Could not write " + snapshotLocation, compactError);
+                    }
+                    if(writeError != null){
+                        logger.log(Level.SEVERE, "Could not write to " + journalLocation
+                                + (done ? ", the changes that weren't written are lost" : ", will keep trying"), writeError);
+                    }
+                }
+                retryDelay = retryDelay == 0 ? FLUSH_INTERVAL : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+            }
+            synchronized(this){
+                if(writeError == null){
+                    written = batchEnd;
+                    failure = null;
+                } else {
+                    //Put them back, so they're tried again, in order
+                    batch.addAll(pending);
+                    pending = batch;
+                    failure = writeError;
+                }
+                notifyAll();
+            }
+            if(done){
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends the batch to the journal, returning the error if it couldn't be.
+     */
+    private IOException tryAppend(List<byte[]> batch) {
+        if(batch.isEmpty()){
+            return null;
+        }
+        try{
+            append(batch);
+            return null;
+        } catch(IOException e){
+            return e;
+        }
+    }
+
+    /**
+     * Appends the records to the journal, and syncs it to disk. If that fails, anything
+     * that was written is truncated away again, so a retry doesn't leave a torn record in
+     * the middle of the journal, which would hide everything after it from replay().
+     */
+    private void append(List<byte[]> batch) throws IOException {
+        FileOutputStream fos = new FileOutputStream(journalLocation, true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        CRC32 crc = new CRC32();
+        long written = 0;
+        try{
+            try{
+                for(byte[] record : batch){
+                    crc.reset();
+                    crc.update(record);
+                    out.writeInt(record.length);
+                    out.writeLong(crc.getValue());
+                    out.write(record);
+                    written += 12 + record.length;
+                }
+                out.flush();
+                fos.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch(IOException e){
+            try{
+                RandomAccessFile journal = new RandomAccessFile(journalLocation, "rw");
+                try{
+                    journal.setLength(journalSize);
+                } finally {
+                    journal.close();
+                }
+            } catch(IOException ex){
+                //replay() will discard the torn record, and anything after it
+            }
+            throw e;
+        }
+        journalSize += written;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, moves it into place, and only then
+     * empties the journal. This must only be called by the writer thread. If we crash part way through, replaying the old journal over
+     * the new snapshot is harmless, since the snapshot already reflects every entry in it.
+     * The old snapshot is never deleted before the new one is in place; where it can't
+     * simply be renamed over, it is moved aside first, and load() falls back to it.
+     */
+    private void compact(HashMap<String, Serializable> snapshot) throws IOException {
+        File parent = snapshotLocation.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File temp = new File(parent, snapshotLocation.getName() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(temp);
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fos));
+        try{
+            out.writeObject(snapshot);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if(!temp.renameTo(snapshotLocation)){
+            //Windows won't rename over an existing file
+            backupLocation.delete();
+            if(!snapshotLocation.renameTo(backupLocation)){
+                throw new IOException("Could not move " + snapshotLocation + " to " + backupLocation);
+            }
+            if(!temp.renameTo(snapshotLocation)){
+                backupLocation.renameTo(snapshotLocation);
+                throw new IOException("Could not move " + temp + " to " + snapshotLocation);
+            }
+            backupLocation.delete();
+        }
+        new FileOutputStream(journalLocation).close();
+        journalSize = 0;
+        snapshotSize = snapshotLocation.length();
+    }
+
+    private void ensureLoaded() {
+        if(!isLoaded){
+            try {
+                load();
+            } catch (Exception ex) {
+                Logger.getLogger(JournaledPersistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    private void enqueue(byte[] record) {
+        if(closed){
+            throw new IllegalStateException("This database has been closed");
+        }
+        pending.add(record);
+        queued++;
+    }
+
+    /**
+     * Waits until all changes made so far have been written to the journal. Since
+     * changes are always journaled in the background anyways, there is no need to call this
+     * after each change; it is only useful if you need to know that the data is on disk.
+     * @throws IOException If the writer couldn't write the changes out. They stay queued,
+     * and the writer keeps retrying them.
+     * @throws Exception
+     */
+    public void save() throws Exception {
+        synchronized(this){
+            ensureLoaded();
+            if(writer == null || !writer.isAlive()){
+                return;
+            }
+            long target = queued;
+            notifyAll();
+            while(written < target && writer.isAlive()){
+                if(failure != null){
+                    throw new IOException("Could not write to " + journalLocation, failure);
+                }
+                wait(FLUSH_INTERVAL);
+            }
+            if(written < target){
+                throw new IOException("The database was closed before the changes could be written", failure);
+            }
+        }
+    }
+
+    /**
+     * Asks the writer thread to compact the journal into the snapshot as soon as possible.
+     */
+    public synchronized void compact() {
+        compactionRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * Writes out any outstanding changes, compacts the journal, and stops the writer thread.
+     * The database may not be changed after this is called.
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException {
+        Thread w;
+        synchronized(this){
+            if(closed){
+                return;
+            }
+            closed = true;
+            notifyAll();
+            w = writer;
+        }
+        if(w != null){
+            w.join();
+        }
+    }
+
+    public synchronized void clearAllData() {
+        ensureLoaded();
+        data = new HashMap<String, Serializable>();
+        index.clear();
+        enqueue(record(OP_CLEAR, null, null));
+    }
+
+    public synchronized Object setValue(String[] key, Object value) {
+        ensureLoaded();
+        String k = getNamespace(key);
+        Serializable oldVal;
+        if(value == null){
+            oldVal = data.remove(k);
+            index.remove(k);
+            enqueue(record(OP_REMOVE, k, null));
+        } else {
+            enqueue(record(value instanceof String ? OP_SET_STRING : OP_SET_OBJECT, k, (Serializable) value));
+            oldVal = data.put(k, (Serializable) value);
+            index.add(k);
+        }
+        return oldVal;
+    }
+
+    public synchronized Object getValue(String[] key) {
+        ensureLoaded();
+        return data.get(getNamespace(key));
+    }
+
+    public synchronized boolean isKeySet(String[] key) {
+        ensureLoaded();
+        return data.containsKey(getNamespace(key));
+    }
+
+    public synchronized boolean isNamespaceSet(String[] partialKey) {
+        ensureLoaded();
+        return index.isNamespaceSet(getNamespace(partialKey));
+    }
+
+    /**
+     * Returns all the matched namespace entries. The entries are copies, so they
+     * won't change if the database does.
+     * @param partialKey The partial name of the keys you wish to return
+     * @return An ArrayList of Map.Entries.
+     */
+    public synchronized List<Map.Entry<String, Object>> getNamespaceValues(String[] partialKey) {
+        ensureLoaded();
+        List<String> keys = index.getKeys(getNamespace(partialKey));
+        List<Map.Entry<String, Object>> matches = new ArrayList<Map.Entry<String, Object>>(keys.size());
+        for(String key : keys){
+            matches.add(new AbstractMap.SimpleEntry<String, Object>(key, data.get(key)));
+        }
+        return matches;
+    }
+
+    private static String getNamespace(String[] key) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            if (i > 0) {
+                b.append(".");
+            }
+            b.append(key[i]);
+        }
+        return b.toString();
+    }
+
+    public synchronized void printValues(PrintStream out) {
+        ensureLoaded();
+        out.println("Printing all persisted values:");
+        for(Map.Entry<String, Serializable> e : data.entrySet()){
+            out.println(e.getKey() + ": " + e.getValue());
+        }
+        out.println("Done printing persisted values");
+    }
+}
@@ -0,0 +1,96 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.*;
+
+/**
+ * A sorted index of the keys in a persistance database, so that all the keys
+ * in a namespace can be found without looking at every key in the database. Since
+ * all the keys in namespace "a.b" start with "a.b.", they are next to each other in
+ * the index, and can be found with a single range lookup.
+ * @author layton
+ */
+public class NamespaceIndex {
+
+    private final TreeSet<String> keys = new TreeSet<String>();
+
+    public void add(String key) {
+        keys.add(key);
+    }
+
+    public void remove(String key) {
+        keys.remove(key);
+    }
+
+    public void clear() {
+        keys.clear();
+    }
+
+    /**
+     * Throws away the current contents of the index, and replaces them with the
+     * specified keys.
+     * @param all
+     */
+    public void rebuild(Collection<String> all) {
+        keys.clear();
+        keys.addAll(all);
+    }
+
+    /**
+     * Returns all the keys in the given namespace, that is, the key that is the namespace
+     * itself, and all the keys under it. Only full segments are considered, so "a.b" matches
+     * "a.b" and "a.b.c", but not "a.bc".
+     * @param namespace
+     * @return
+     */
+    public List<String> getKeys(String namespace) {
+        String prefix = normalize(namespace);
+        if (prefix == null) {
+            return new ArrayList<String>(keys);
+        }
+        SortedSet<String> children = children(prefix);
+        List<String> matches = new ArrayList<String>(children.size() + 1);
+        if (keys.contains(prefix)) {
+            matches.add(prefix);
+        }
+        matches.addAll(children);
+        return matches;
+    }
+
+    /**
+     * Returns true if there is at least one key in the given namespace.
+     * @param namespace
+     * @return
+     */
+    public boolean isNamespaceSet(String namespace) {
+        String prefix = normalize(namespace);
+        if (prefix == null) {
+            return !keys.isEmpty();
+        }
+        return keys.contains(prefix) || !children(prefix).isEmpty();
+    }
+
+    private SortedSet<String> children(String prefix) {
+        //'/' is the character right after '.', so this is everything starting with "prefix."
+        return keys.subSet(prefix + ".", prefix + "/");
+    }
+
+    /**
+     * Namespaces have always been compared by splitting on periods, which ignores
+     * trailing periods, so we do the same here. Returns null if the namespace is
+     * nothing but periods, which matches everything.
+     */
+    private static String normalize(String namespace) {
+        String[] parts = namespace.split("\\.");
+        if (parts.length == 0) {
+            return null;
+        }
+        StringBuilder b = new StringBuilder(namespace.length());
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                b.append(".");
+            }
+            b.append(parts[i]);
+        }
+        return b.toString();
+    }
+}
@@ -17,6 +17,15 @@ public class SerializedPersistance implements Persistance{
      * This is the data structure that the registry is stored in
      */
     private HashMap<String, Serializable> data = new HashMap<String, Serializable>();
+    /**
+     * The keys in data, sorted, for namespace lookups.
+     */
+    private NamespaceIndex index = new NamespaceIndex();
+    /**
+     * Once rawData has been handed out, we can't know what has been changed, so
+     * the index has to be rebuilt before each use.
+     */
+    private boolean indexStale = false;
     private boolean isLoaded = false;
     /**
      * The storage location of the persistance database. 
@@ -41,6 +50,7 @@ public class SerializedPersistance implements Persistance{
      * @return 
      */
     public HashMap<String, Serializable> rawData(){
+        indexStale = true;
         return data;
     }
     
@@ -51,6 +61,7 @@ public class SerializedPersistance implements Persistance{
      */
     public void clearAllData(){
         data = new HashMap<String, Serializable>();
+        index.clear();
     }
 
     /**
@@ -66,6 +77,7 @@ public class SerializedPersistance implements Persistance{
                 in = new ObjectInputStream(fis);
                 data = (HashMap<String, Serializable>) in.readObject();
                 in.close();
+                index.rebuild(data.keySet());
                 isLoaded = true;
             }            
         } catch (FileNotFoundException ex){
@@ -111,8 +123,10 @@ public class SerializedPersistance implements Persistance{
         Serializable oldVal = data.get(key);
         if(value == null){
             data.remove(key);
+            index.remove(key);
         } else {
             data.put(key, value);
+            index.add(key);
         }
         try {
             save();
@@ -190,28 +204,7 @@ public class SerializedPersistance implements Persistance{
      * @return
      */
     public synchronized boolean isNamespaceSet(String[] partialKey) {
-        String m = getNamespace(partialKey);
-        partialKey = m.split("\\.");
-        Iterator i = data.entrySet().iterator();
-        while (i.hasNext()) {
-            String key = ((Map.Entry)i.next()).getKey().toString();
-            String[] namespace = key.split("\\.");
-            boolean match = true;
-            for (int k = 0; k < partialKey.length; k++) {
-                if (namespace.length < k) {
-                    match = false;
-                    continue;
-                }
-                if (!namespace[k].equals(partialKey[k])) {
-                    match = false;
-                    continue;
-                }
-            }
-            if (match) {
-                return true;
-            }
-        }
-        return false;
+        return getIndex().isNamespaceSet(getNamespace(partialKey));
     }
 
     /**
@@ -221,9 +214,6 @@ public class SerializedPersistance implements Persistance{
      */
     public synchronized List<Map.Entry<String, Object>> getNamespaceValues(String[] partialKey){
 
-        List<Map.Entry<String, Object>> matches = new ArrayList<Map.Entry<String, Object>>();
-        String m = getNamespace(partialKey);
-        partialKey = m.split("\\.");
         if(!isLoaded){
             try {
                 load();
@@ -231,28 +221,20 @@ public class SerializedPersistance implements Persistance{
                 Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        Iterator i = data.entrySet().iterator();
-        while (i.hasNext()) {
-            Map.Entry entry = (Map.Entry)i.next();
-            String key = entry.getKey().toString();
-            String[] namespace = key.split("\\.");
-            boolean match = true;
-            for (int k = 0; k < partialKey.length; k++) {
-                if (namespace.length < partialKey.length) {
-                    match = false;
-                    continue;
-                }
-                if (!namespace[k].equals(partialKey[k])) {
-                    match = false;
-                    continue;
-                }
-            }
-            if (match) {
-                matches.add(entry);
-            }
+        List<String> keys = getIndex().getKeys(getNamespace(partialKey));
+        List<Map.Entry<String, Object>> matches = new ArrayList<Map.Entry<String, Object>>(keys.size());
+        for (String key : keys) {
+            matches.add(new AbstractMap.SimpleEntry<String, Object>(key, data.get(key)));
         }
         return matches;
     }
+    
+    private NamespaceIndex getIndex(){
+        if(indexStale){
+            index.rebuild(data.keySet());
+        }
+        return index;
+    }
 
     /**
      * Combines the String array into a single string
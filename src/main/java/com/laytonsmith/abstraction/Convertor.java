@@ -48,6 +48,14 @@ public interface Convertor {
 
     public void ClearFutureRunnable(int id);
 
+    /**
+     * Like SetFutureRunnable, the runnable is run on a server accessible thread, but it is run
+     * again every ms after that, until it is cleared.
+     * @param ms
+     * @param initialDelay
+     * @param r
+     * @return 
+     */
     public int SetFutureRepeater(long ms, long initialDelay, Runnable r);
 
     public MCEntity GetCorrectEntity(MCEntity e);
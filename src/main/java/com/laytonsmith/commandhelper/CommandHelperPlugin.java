@@ -20,7 +20,8 @@
 package com.laytonsmith.commandhelper;
 
 import com.laytonsmith.PureUtilities.Preferences;
-import com.laytonsmith.PureUtilities.SerializedPersistance;
+import com.laytonsmith.PureUtilities.JournaledPersistance;
+import com.laytonsmith.PureUtilities.Persistance;
 import com.laytonsmith.PureUtilities.TermColors;
 import com.laytonsmith.abstraction.*;
 import com.laytonsmith.abstraction.bukkit.BukkitMCPlayer;
@@ -60,7 +61,7 @@ public class CommandHelperPlugin extends JavaPlugin {
     //Do not rename this field, it is changed reflectively in unit tests.
     private static AliasCore ac;
     public static MCServer myServer;
-    public static SerializedPersistance persist;
+    public static Persistance persist;
     public static PermissionsResolverManager perms;
     public static Version version;
     public static CommandHelperPlugin self;
@@ -99,7 +100,6 @@ public class CommandHelperPlugin extends JavaPlugin {
     public void onEnable() {       
         self = this;
         myServer = StaticLayer.GetServer();
-        persist = new SerializedPersistance(new File("plugins/CommandHelper/persistance.ser"), this);
         logger.info("CommandHelper/CommandHelper " + getDescription().getVersion() + " enabled");
         version = new Version(getDescription().getVersion());
         PermissionsResolverManager.initialize(this);
@@ -113,6 +113,7 @@ public class CommandHelperPlugin extends JavaPlugin {
             //some information from them.
             File prefsFile = new File("plugins/CommandHelper/preferences.txt");
             Prefs.init(prefsFile);
+            persist = Static.OpenPersistance(new File("plugins/CommandHelper/persistance.ser"));
             if(Prefs.UseColors()){
                 TermColors.EnableColors();
             } else {
@@ -131,6 +132,9 @@ public class CommandHelperPlugin extends JavaPlugin {
         } catch (IOException ex) {
             logger.log(Level.SEVERE, null, ex);
         }
+        if(persist == null){
+            persist = Static.OpenPersistance(new File("plugins/CommandHelper/persistance.ser"));
+        }
         
         //Clear out our hostname cache
         hostnameLookupCache = new ConcurrentHashMap<String, String>();
@@ -172,6 +176,16 @@ public class CommandHelperPlugin extends JavaPlugin {
      */
     @Override
     public void onDisable() {
+        AsyncExecutor.Shutdown();
+        TaskScheduler.CancelAll();
+        if(persist instanceof JournaledPersistance){
+            //Make sure everything is written out, and leave the database compacted
+            try {
+                ((JournaledPersistance)persist).close();
+            } catch (InterruptedException ex) {
+                logger.log(Level.SEVERE, null, ex);
+            }
+        }
         //free up some memory
         ac = null;
         wep = null;
@@ -200,7 +214,8 @@ public class CommandHelperPlugin extends JavaPlugin {
             if(sender instanceof Player){
                 player = new BukkitMCPlayer((Player)sender);
             }
-            ac.reload(player);
+            boolean full = args.length > 0 && args[0].equalsIgnoreCase("-f");
+            ac.reload(player, Prefs.IncrementalReload() && !full);
 //            if(ac.reload(player)){
 //                if(sender instanceof Player){
 //                    Static.SendMessage(player, MCChatColor.GOLD + "Command Helper scripts sucessfully recompiled.");
@@ -215,6 +230,37 @@ public class CommandHelperPlugin extends JavaPlugin {
             return true;
         } else if(cmd.getName().equals("commandhelper") && args.length >= 1 && args[0].equalsIgnoreCase("null")){
             return true;
+        } else if(cmd.getName().equals("commandhelper") && args.length >= 1 && args[0].equalsIgnoreCase("profiler")
+                && (sender.isOp() || (sender instanceof Player && (perms.hasPermission(((Player)sender).getName(), "commandhelper.profiler")
+                || perms.hasPermission(((Player)sender).getName(), "ch.profiler"))))){
+            String action = args.length >= 2 ? args[1].toLowerCase() : "";
+            if(action.equals("on") || action.equals("off")){
+                Profiler.SetEnabled(action.equals("on"));
+                sender.sendMessage("The profiler is now " + action + ".");
+            } else if(action.equals("reset")){
+                Profiler.Reset();
+                sender.sendMessage("The profiler has been reset.");
+            } else if(action.equals("dump")){
+                int limit = 20;
+                if(args.length >= 3){
+                    try{
+                        limit = Integer.parseInt(args[2]);
+                    } catch(NumberFormatException e){
+                        //Use the default
+                    }
+                }
+                try {
+                    Profiler.Dump(limit);
+                } catch (IOException ex) {
+                    logger.log(Level.SEVERE, null, ex);
+                }
+                for(String line : Profiler.Report(limit).split("\n")){
+                    sender.sendMessage(line);
+                }
+            } else {
+                sender.sendMessage("Usage: /commandhelper profiler <on|off|reset|dump [limit]>");
+            }
+            return true;
         } else if(cmd.getName().equals("runalias")){
             //Hardcoded alias rebroadcast
             if(sender instanceof Player){
@@ -10,17 +10,24 @@ import com.laytonsmith.abstraction.MCChatColor;
 import com.laytonsmith.abstraction.MCCommandSender;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.constructs.Construct;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.events.EventUtils;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Economy;
+import com.laytonsmith.core.functions.EvalCache;
 import com.laytonsmith.core.functions.IncludeCache;
 import com.laytonsmith.core.functions.Scheduling;
 import com.sk89q.util.StringUtil;
 import com.sk89q.wepif.PermissionsResolverManager;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -41,6 +48,18 @@ public class AliasCore {
     private File mainFile;
     //AliasConfig config;
     List<Script> scripts;
+    /**
+     * The same scripts as above, indexed by the literal words they start with
+     */
+    private CommandTrie commandTrie;
+    /**
+     * The contents of each ms file, as of the last reload
+     */
+    private Map<File, String> loadedMS;
+    /**
+     * The compiled msa files, as of the last reload
+     */
+    private Map<File, LocalPackage.CompiledFile> loadedMSA;
     static final Logger logger = Logger.getLogger("Minecraft");
     private Set<String> echoCommand = new HashSet<String>();
     private PermissionsResolverManager perms;
@@ -92,7 +111,7 @@ public class AliasCore {
             }
 
             //Global aliases override personal ones, so check the list first
-            for (Script s : scripts) {
+            for (Script s : commandTrie.getCandidates(command)) {
                 try {
                     if (s.match(command)) {
                         this.addPlayerReference(player);
@@ -164,7 +183,10 @@ public class AliasCore {
                         //RunnableAlias b = ac.getRunnableAliases(command, player);
                         try {
                             
-                            ac.compile();
+                            if (!ac.hasBeenCompiled) {
+                                //UserManager hands us compiled scripts, but we may be given others
+                                ac.compile();
+                            }
                             
                             if (ac.match(command)) {
                                 Static.getAliasCore().addPlayerReference(player);
@@ -220,12 +242,23 @@ public class AliasCore {
      * compile errors, otherwise, null.
      */
     public final void reload(MCPlayer player) {
+        reload(player, false);
+    }
+
+    /**
+     * Loads the scripts in from the file system, as {@link #reload(MCPlayer)} does. If
+     * incremental is true, and the scripts have already been loaded, only the files that
+     * have changed since the last reload are compiled. Aliases from unchanged msa files are
+     * kept, and only the ms files that changed, or that included a file that changed, are
+     * run again, once the events they bound and the tasks they scheduled have been removed.
+     * Globals are left alone. If the auto includes changed, everything depends on them, so
+     * a full reload is done anyways.
+     * @param player
+     * @param incremental 
+     */
+    public final void reload(MCPlayer player, boolean incremental) {
         try {
             CHLog.Log(CHLog.Tags.GENERAL, CHLog.Level.VERBOSE, "Scripts reloading...", Target.UNKNOWN);
-            Globals.clear();
-            Scheduling.ClearScheduledRunners();
-            EventUtils.UnregisterAll();            
-            IncludeCache.clearCache(); //Clear the include cache, so it re-pulls files
             if (!aliasConfig.exists()) {
                 aliasConfig.getParentFile().mkdirs();
                 aliasConfig.createNewFile();
@@ -253,9 +286,19 @@ public class AliasCore {
             }
 
             Prefs.init(prefFile);
-            scripts = new ArrayList<Script>();
             
             LocalPackage localPackages = new LocalPackage();
+            CompileCache cache = null;
+            if(Prefs.CompileCache()){
+                String version;
+                try {
+                    version = Static.getVersion().toString();
+                } catch(NotInitializedYetException e){
+                    version = "unknown";
+                }
+                cache = new CompileCache(new File(mainFile.getParentFile(), "compile-cache"), version);
+                localPackages.setCompileCache(cache);
+            }
                         
             
             //Run the main file once           
@@ -269,10 +312,47 @@ public class AliasCore {
             //Now that we've included the default files, search the local_packages directory
             GetAuxAliases(auxAliases, localPackages);
             
+            Set<File> changedIncludes = null;
+            if(incremental && loadedMS != null){
+                changedIncludes = IncludeCache.invalidateChanged();
+                if(!localPackages.getAutoIncludes().equals(autoIncludes) || !Collections.disjoint(changedIncludes, autoIncludes)){
+                    CHLog.Log(CHLog.Tags.GENERAL, CHLog.Level.INFO, "Auto includes changed, doing a full reload", Target.UNKNOWN);
+                    changedIncludes = null;
+                }
+            }
+            
+            Set<File> toRun = null;
+            EvalCache.clearCache();
+            if(changedIncludes == null){
+                Globals.clear();
+                Scheduling.ClearScheduledRunners();
+                EventUtils.UnregisterAll();            
+                IncludeCache.clearCache(); //Clear the include cache, so it re-pulls files
+                loadedMSA = null;
+            } else {
+                toRun = localPackages.getChangedMS(loadedMS, IncludeCache.getDependents(changedIncludes));
+                //Anything bound by a changed file, or a file that's gone, has to go
+                Set<File> unload = new HashSet<File>(loadedMS.keySet());
+                unload.removeAll(localPackages.getMSContents().keySet());
+                unload.addAll(toRun);
+                EventUtils.UnregisterFrom(unload);
+                Scheduling.ClearScheduledRunners(unload);
+                CHLog.Log(CHLog.Tags.GENERAL, CHLog.Level.VERBOSE, "Incremental reload, running " + toRun.size() + " changed ms file(s)", Target.UNKNOWN);
+            }
+            
             autoIncludes = localPackages.getAutoIncludes();
 
-            localPackages.compileMS(player);
-            localPackages.compileMSA(scripts, player);
+            localPackages.compileMS(player, toRun);
+            List<Script> newScripts = new ArrayList<Script>();
+            CommandTrie newTrie = new CommandTrie(Prefs.CaseSensitive());
+            localPackages.compileMSA(newScripts, newTrie, player, loadedMSA);
+            scripts = newScripts;
+            commandTrie = newTrie;
+            loadedMS = localPackages.getMSContents();
+            loadedMSA = localPackages.getCompiled();
+            if(cache != null){
+                cache.prune();
+            }
             
         } catch (IOException ex) {
             logger.log(Level.SEVERE, "[CommandHelper]: Path to config file is not correct/accessable. Please"
@@ -291,20 +371,44 @@ public class AliasCore {
 
     /**
      * Returns the contents of a file as a string. Accepts the file location
-     * as a string.
+     * as a string. Line endings are converted to \n, and the last line is
+     * always terminated with a \n.
      * @param file_location
      * @return the contents of the file as a string
      * @throws Exception if the file cannot be found
      */
     public static String file_get_contents(String file_location) throws IOException {
-        BufferedReader in = new BufferedReader(new FileReader(file_location));
-        String ret = "";
-        String str;
-        while ((str = in.readLine()) != null) {
-            ret += str + "\n";
-        }
-        in.close();
-        return ret;
+        FileInputStream in = new FileInputStream(file_location);
+        ByteBuffer bytes;
+        try {
+            FileChannel channel = in.getChannel();
+            bytes = ByteBuffer.allocate((int) channel.size());
+            while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+                //Keep reading until the buffer is full
+            }
+        } finally {
+            in.close();
+        }
+        bytes.flip();
+        CharBuffer chars = Charset.defaultCharset().decode(bytes);
+        //Same line handling as BufferedReader.readLine: \r, \n and \r\n all end a line
+        StringBuilder b = new StringBuilder(chars.remaining() + 1);
+        boolean terminated = true;
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c == '\r') {
+                if (chars.hasRemaining() && chars.get(chars.position()) == '\n') {
+                    chars.get();
+                }
+                c = '\n';
+            }
+            b.append(c);
+            terminated = c == '\n';
+        }
+        if (!terminated) {
+            b.append('\n');
+        }
+        return b.toString();
     }
 
     /**
@@ -398,16 +502,61 @@ public class AliasCore {
                 this.file = file;
             }
             
+            /**
+             * Returns the contents of the file. If the contents weren't given when the
+             * file was added, the file is read in now.
+             * @return 
+             */
             public String contents(){
+                if(contents == null){
+                    try {
+                        contents = file_get_contents(file.getAbsolutePath());
+                    } catch (IOException ex) {
+                        Logger.getLogger(AliasCore.class.getName()).log(Level.SEVERE, null, ex);
+                        contents = "";
+                    }
+                }
                 return contents;
             }
             public File file(){
                 return file;
             }
         }
+        
+        /**
+         * The output of lexing, preprocessing and compiling a single msa file.
+         */
+        private static class CompiledFile {
+            final FileInfo fi;
+            List<Script> scripts;
+            /**
+             * The compile error for each script, or null if it compiled
+             */
+            List<ConfigCompileException> errors;
+            /**
+             * Set if the file couldn't be preprocessed at all
+             */
+            ConfigCompileException fileError;
+
+            CompiledFile(FileInfo fi) {
+                this.fi = fi;
+            }
+        }
+        
         private List<File> autoIncludes = new ArrayList<File>();
         private List<FileInfo> ms = new ArrayList<FileInfo>();
         private List<FileInfo> msa = new ArrayList<FileInfo>();
+        private CompileCache cache = null;
+        private Map<File, CompiledFile> compiled = new HashMap<File, CompiledFile>();
+        
+        /**
+         * Sets the cache that compiled files are loaded from and saved to. If null,
+         * which is the default, everything is compiled from source.
+         * @param cache 
+         */
+        public void setCompileCache(CompileCache cache){
+            this.cache = cache;
+        }
         
         public List<FileInfo> getMSFiles(){
             return new ArrayList<FileInfo>(ms);
@@ -429,33 +578,204 @@ public class AliasCore {
             msa.add(new FileInfo(s, path));
         }
         
+        /**
+         * Adds an msa file, which isn't read in until it is compiled.
+         * @param path 
+         */
+        public void appendMSA(File path){
+            msa.add(new FileInfo(null, path));
+        }
+        
         public void appendMS(String s, File path){
             ms.add(new FileInfo(s, path));
         }
         
-        public void compileMSA(List<Script> scripts, MCPlayer player) {
-            
-            for(FileInfo fi : msa){
-                List<Script> tempScripts;
-                try{
-                    tempScripts = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(fi.contents, fi.file), new Env());
-                    for (Script s : tempScripts) {
+        /**
+         * Adds an ms file, which isn't read in until it is run.
+         * @param path 
+         */
+        public void appendMS(File path){
+            ms.add(new FileInfo(null, path));
+        }
+        
+        /**
+         * Reads in and compiles a single msa file. This doesn't touch anything
+         * shared, so it is safe to run several of these at once.
+         */
+        private static CompiledFile compileFile(FileInfo fi, CompileCache cache, Map<File, CompiledFile> previous){
+            if(previous != null){
+                CompiledFile last = previous.get(fi.file);
+                if(last != null && last.fi.contents().equals(fi.contents())){
+                    //Unchanged since the last reload, so the scripts can be used as is
+                    if(cache != null){
+                        cache.touchScripts(fi.file);
+                    }
+                    return last;
+                }
+            }
+            CompiledFile cf = new CompiledFile(fi);
+            if(cache != null){
+                cf.scripts = cache.getScripts(fi.file, fi.contents());
+                if(cf.scripts != null){
+                    cf.errors = new ArrayList<ConfigCompileException>(Collections.<ConfigCompileException>nCopies(cf.scripts.size(), null));
+                    return cf;
+                }
+            }
+            try {
+                cf.scripts = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(fi.contents(), fi.file), new Env());
+            } catch (ConfigCompileException e) {
+                cf.fileError = e;
+                return cf;
+            }
+            cf.errors = new ArrayList<ConfigCompileException>(cf.scripts.size());
+            boolean failed = false;
+            for (Script s : cf.scripts) {
+                try {
+                    s.compile();
+                    cf.errors.add(null);
+                } catch (ConfigCompileException e) {
+                    cf.errors.add(e);
+                    failed = true;
+                }
+            }
+            if(cache != null && !failed){
+                cache.putScripts(fi.file, fi.contents(), cf.scripts);
+            }
+            return cf;
+        }
+        
+        /**
+         * Returns the contents of each ms file, by file.
+         * @return 
+         */
+        public Map<File, String> getMSContents(){
+            Map<File, String> contents = new HashMap<File, String>();
+            for(FileInfo fi : ms){
+                contents.put(fi.file, fi.contents());
+            }
+            return contents;
+        }
+        
+        /**
+         * Returns the ms files whose contents are different from the previous contents,
+         * or that are in the set of files that must be run again anyways.
+         * @param previous
+         * @param rerun
+         * @return 
+         */
+        public Set<File> getChangedMS(Map<File, String> previous, Set<File> rerun){
+            Set<File> changed = new HashSet<File>();
+            for(FileInfo fi : ms){
+                if(rerun.contains(fi.file) || !fi.contents().equals(previous.get(fi.file))){
+                    changed.add(fi.file);
+                }
+            }
+            return changed;
+        }
+        
+        /**
+         * Returns the msa files compiled by the last call to compileMSA, by file.
+         * @return 
+         */
+        private Map<File, CompiledFile> getCompiled(){
+            return compiled;
+        }
+        
+        public void compileMSA(List<Script> scripts, CommandTrie trie, MCPlayer player) {
+            compileMSA(scripts, trie, player, null);
+        }
+        
+        /**
+         * Compiles all the msa files, and adds the scripts to the list and trie. The files
+         * are read and compiled in parallel, but the results are added in the same order
+         * the files were added to the package, so the ambiguity checks and compile errors
+         * come out the same as they would if the files were compiled one at a time.
+         * <p>
+         * This waits for the compiles on the calling thread, which is normally the server
+         * thread. That is deliberate: by the time this runs, reload has already unregistered
+         * the events, cleared the tasks and run the ms files on that thread, so swapping the
+         * aliases in later would leave the server running with half of the new scripts
+         * loaded, and the callers expect the scripts to be ready once reload returns. The
+         * wait is only as long as the slowest file, and unchanged files aren't compiled.
+         * @param scripts
+         * @param trie
+         * @param player 
+         * @param previous The files compiled by the last reload, if their scripts may be
+         * reused. Files that haven't changed since then aren't compiled again. May be null.
+         */
+        private void compileMSA(List<Script> scripts, CommandTrie trie, MCPlayer player, final Map<File, CompiledFile> previous) {
+            ExecutorService compilers = null;
+            List<Future<CompiledFile>> results = new ArrayList<Future<CompiledFile>>(msa.size());
+            int threads = Math.min(msa.size(), Runtime.getRuntime().availableProcessors());
+            if(threads > 1){
+                compilers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    int count = 0;
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "CommandHelperCompiler-" + (++count));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            try {
+                for(final FileInfo fi : msa){
+                    FutureTask<CompiledFile> task = new FutureTask<CompiledFile>(new Callable<CompiledFile>() {
+
+                        public CompiledFile call() throws Exception {
+                            return compileFile(fi, cache, previous);
+                        }
+                    });
+                    if(compilers == null){
+                        task.run();
+                    } else {
+                        compilers.execute(task);
+                    }
+                    results.add(task);
+                }
+                //Merge on this thread, in order, so the trie is only touched here
+                for(Future<CompiledFile> result : results){
+                    CompiledFile cf;
+                    try {
+                        cf = result.get();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (ExecutionException ex) {
+                        if(ex.getCause() instanceof RuntimeException){
+                            throw (RuntimeException)ex.getCause();
+                        }
+                        if(ex.getCause() instanceof Error){
+                            throw (Error)ex.getCause();
+                        }
+                        throw new RuntimeException(ex.getCause());
+                    }
+                    compiled.put(cf.fi.file, cf);
+                    if(cf.fileError != null){
+                        ConfigRuntimeException.DoReport(cf.fileError, "Could not compile file " + cf.fi.file + " compilation will halt.", player);
+                        return;
+                    }
+                    for(int i = 0; i < cf.scripts.size(); i++){
+                        Script s = cf.scripts.get(i);
                         try {
-                            s.compile();
-                            s.checkAmbiguous((ArrayList<Script>) scripts);
+                            if(cf.errors.get(i) != null){
+                                throw cf.errors.get(i);
+                            }
+                            s.checkAmbiguous(trie.getCandidates(s));
                             scripts.add(s);
+                            trie.add(s);
                         } catch (ConfigCompileException e) {
                             ConfigRuntimeException.DoReport(e, "Compile error in script. Compilation will attempt to continue, however.", player);
                         }
                     }
-                } catch(ConfigCompileException e){
-                    ConfigRuntimeException.DoReport(e, "Could not compile file " + fi.file + " compilation will halt.", player);
-                    return;
+                }
+            } finally {
+                if(compilers != null){
+                    compilers.shutdownNow();
                 }
             }
             int errors = 0;
             for (Script s : scripts) {
-                if (s.compilerError) {
+                if (s.uncompilable()) {
                     errors++;
                 }
             }
@@ -467,12 +787,38 @@ public class AliasCore {
         }
         
         public void compileMS(MCPlayer player){
+            compileMS(player, null);
+        }
+        
+        /**
+         * Runs the ms files.
+         * @param player
+         * @param only If not null, only the files in this set are run
+         */
+        public void compileMS(MCPlayer player, Set<File> only){
+            if(cache != null){
+                //Files that aren't run this time still exist, so their cache has to be kept
+                for(FileInfo fi : ms){
+                    cache.touchTree(fi.file);
+                }
+            }
             for(FileInfo fi : ms){
+                if(only != null && !only.contains(fi.file)){
+                    continue;
+                }
                 boolean exception = false;
                 try{
                     Env env = new Env();
+                    env.SetSourceFile(fi.file);
                     MethodScriptCompiler.registerAutoIncludes(env, null);
-                    MethodScriptCompiler.execute(MethodScriptCompiler.compile(MethodScriptCompiler.lex(fi.contents, fi.file)), env, null, null);
+                    GenericTreeNode<Construct> tree = cache == null ? null : cache.getTree(fi.file, fi.contents());
+                    if(tree == null){
+                        tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(fi.contents(), fi.file));
+                        if(cache != null){
+                            cache.putTree(fi.file, fi.contents(), tree);
+                        }
+                    }
+                    MethodScriptCompiler.execute(tree, env, null, null);
                 } catch(ConfigCompileException e){
                     exception = true;
                     ConfigRuntimeException.DoReport(e, fi.file.getAbsolutePath() + " could not be compiled, due to a compile error.", player);
@@ -498,20 +844,13 @@ public class AliasCore {
             }
         } else if(start.isFile()){
             if(start.getName().endsWith(".msa")){
-                try {
-                    pack.appendMSA(file_get_contents(start.getAbsolutePath()), start);
-                } catch (IOException ex) {
-                    Logger.getLogger(AliasCore.class.getName()).log(Level.SEVERE, null, ex);
-                }
+                //Read in later, by the compiler threads
+                pack.appendMSA(start);
             } else if(start.getName().endsWith(".ms")){
                 if(start.getName().equals("auto_include.ms")){
                     pack.addAutoInclude(start);
                 } else {
-                    try {
-                        pack.appendMS(file_get_contents(start.getAbsolutePath()), start);
-                    } catch (IOException ex) {
-                        Logger.getLogger(AliasCore.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+                    pack.appendMS(start);
                 }
             } else if(start.getName().endsWith(".mslp")){
                 try {
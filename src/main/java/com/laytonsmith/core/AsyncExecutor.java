@@ -0,0 +1,268 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.abstraction.StaticLayer;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.exceptions.CancelCommandException;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Function;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs scripts that use functions which declare runAsync() off of the main server thread.
+ * The interpreter can't suspend a script part way through, so instead, the whole script
+ * is run on one of a small, fixed number of worker threads. Functions that declare runAsync()
+ * to be false are handed back to the main thread, while the worker waits for them; everything
+ * else, including control flow and the pure functions that return null, runs on the worker.
+ * Blocking functions, like the persistance functions, then run on the worker, and the server
+ * tick only pays for the functions that really need it.
+ * <p>
+ * Work for the main thread goes into a single queue, which one repeating task drains every
+ * tick. Once it has run something, it keeps taking work for a few ms, so a script that makes
+ * a run of main thread calls usually gets them all done in one tick, rather than one per tick.
+ * <p>
+ * Async execution is only used if it is enabled in the preferences. If the queue of waiting
+ * scripts fills up, scripts are run on the main thread, as they would be otherwise.
+ * @author Layton
+ */
+public class AsyncExecutor {
+
+    private static final int QUEUE_SIZE = 100;
+    /**
+     * How often the main thread queue is drained, in ms. This is one server tick.
+     */
+    private static final long TICK = 50;
+    /**
+     * The number of ns each tick may spend waiting for more main thread work, once the
+     * workers have been given something back.
+     */
+    private static final long MAIN_THREAD_BUDGET = 5000000;
+    /**
+     * How long to wait for the next piece of main thread work before deciding the
+     * workers have gone off to do something slow, in ns.
+     */
+    private static final long MAIN_THREAD_WAIT = 1000000;
+    private static ThreadPoolExecutor pool;
+    private static int driver = -1;
+    /**
+     * Set once the workers are started, so the main thread doesn't have to check
+     * onWorker for every function call when async execution isn't in use.
+     */
+    private static volatile boolean started = false;
+    private static final ThreadLocal<Boolean> onWorker = new ThreadLocal<Boolean>();
+    private static final BlockingQueue<Runnable> mainQueue = new LinkedBlockingQueue<Runnable>();
+
+    private AsyncExecutor(){}
+
+    /**
+     * Returns true if async execution is turned on in the preferences.
+     * @return
+     */
+    public static boolean Enabled(){
+        return Prefs.AsyncExecution();
+    }
+
+    /**
+     * Returns true if the current thread is one of the script workers.
+     * @return
+     */
+    public static boolean OnWorker(){
+        return started && onWorker.get() == Boolean.TRUE;
+    }
+
+    /**
+     * Runs the specified script on a worker thread. If all the workers are busy,
+     * and the queue is full, it is run on this thread instead.
+     * @param r
+     */
+    public static synchronized void RunScript(Runnable r){
+        if(pool == null){
+            final int threads = Math.max(1, Prefs.AsyncThreads());
+            pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+                int count = 0;
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(new Runnable() {
+
+                        public void run() {
+                            onWorker.set(true);
+                            r.run();
+                        }
+                    }, "CommandHelperWorker-" + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+            started = true;
+            startDriver();
+        }
+        pool.execute(r);
+    }
+
+    private static void startDriver(){
+        if(driver == -1){
+            driver = StaticLayer.SetFutureRepeater(TICK, 0, new Runnable() {
+
+                public void run() {
+                    Drain();
+                }
+            });
+        }
+    }
+
+    /**
+     * Lets the executor know that all the server tasks were cancelled, which includes the
+     * one that drains the main thread queue, so that it can be started again.
+     */
+    public static synchronized void RunnablesCleared(){
+        driver = -1;
+        if(pool != null){
+            startDriver();
+        }
+    }
+
+    /**
+     * Runs the work the workers have queued for the main thread. This is called by the
+     * repeating task every tick.
+     */
+    public static void Drain(){
+        long start = System.nanoTime();
+        boolean ranAny = false;
+        while(true){
+            Runnable r = mainQueue.poll();
+            if(r == null){
+                long left = MAIN_THREAD_BUDGET - (System.nanoTime() - start);
+                if(!ranAny || left <= 0){
+                    return;
+                }
+                //The worker we just ran something for will likely want the main thread
+                //again shortly, so give it a moment, rather than making it wait a tick
+                try {
+                    r = mainQueue.poll(Math.min(left, MAIN_THREAD_WAIT), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if(r == null){
+                    return;
+                }
+            }
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                Logger.getLogger(AsyncExecutor.class.getName()).log(Level.SEVERE, null, e);
+            }
+            ranAny = true;
+        }
+    }
+
+    /**
+     * Runs the runnable on the main thread, with the other main thread work from the
+     * workers, usually within a tick. This doesn't wait for it to run.
+     * @param r
+     */
+    public static void RunOnMain(Runnable r){
+        mainQueue.add(r);
+    }
+
+    /**
+     * Returns true if we are on a worker, and the specified function can't be run here,
+     * which is the case if it declares runAsync() to be false. Functions that return null
+     * run wherever the script is running.
+     * @param f
+     * @return
+     */
+    public static boolean MustRunOnMain(Function f){
+        return OnWorker() && f.runAsync() == Boolean.FALSE;
+    }
+
+    /**
+     * Calls exec on the function. If we are on a worker and the function must run on the
+     * main thread, it is run there, and this waits for it to finish.
+     * @param f
+     * @param t
+     * @param env
+     * @param args
+     * @return
+     */
+    public static Construct Exec(final Function f, final Target t, final Env env, final Construct... args){
+        if(!MustRunOnMain(f)){
+            return f.exec(t, env, args);
+        }
+        return OnMainThread(new Callable<Construct>() {
+
+            public Construct call() throws Exception {
+                return f.exec(t, env, args);
+            }
+        }, t);
+    }
+
+    /**
+     * Runs the callable on the main thread, and waits for the result. Exceptions are
+     * rethrown on this thread.
+     * @param <T>
+     * @param c
+     * @param t
+     * @return
+     */
+    public static <T> T OnMainThread(Callable<T> c, Target t){
+        FutureTask<T> task = new FutureTask<T>(c);
+        mainQueue.add(task);
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            //We're being shut down
+            throw new CancelCommandException("");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error){
+                throw (Error)cause;
+            }
+            throw new ConfigRuntimeException(cause.getMessage(), null, t, cause);
+        }
+    }
+
+    /**
+     * Returns a MethodScriptComplete that passes the output on to the specified one,
+     * on the main thread, so that the output can safely be used to run commands.
+     * @param done
+     * @return
+     */
+    public static MethodScriptComplete OnMainThread(final MethodScriptComplete done){
+        if(done == null){
+            return null;
+        }
+        return new MethodScriptComplete() {
+
+            public void done(final String output) {
+                RunOnMain(new Runnable() {
+
+                    public void run() {
+                        done.done(output);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Stops the workers. Scripts that are still running are interrupted the next time
+     * they wait for the main thread, and the work they queued for it is dropped.
+     */
+    public static synchronized void Shutdown(){
+        if(pool != null){
+            pool.shutdownNow();
+            pool = null;
+        }
+        if(driver != -1){
+            StaticLayer.ClearFutureRunnable(driver);
+            driver = -1;
+        }
+        mainQueue.clear();
+    }
+}
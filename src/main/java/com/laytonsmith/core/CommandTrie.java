@@ -0,0 +1,173 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Construct.ConstructType;
+import java.util.*;
+
+/**
+ * Finds the aliases that could possibly match a command, without trying every alias.
+ * Each alias is filed under the literal words at the start of its signature (everything up
+ * to the first variable), so for instance <code>/cmd sub $var = ...</code> is filed under
+ * "/cmd" then "sub". Looking up a command then only walks down as many levels as there are words
+ * in the command, and collects the aliases filed along the way. An alias can't match a command
+ * unless all its leading literals do, so these are the only aliases that Script.match needs to
+ * be run on. The candidates are returned in the order the aliases were added, so the first
+ * alias to match is the same one it would be if all the aliases were tried in order.
+ * @author Layton
+ */
+public class CommandTrie {
+
+    private static class Node {
+        Map<String, Node> children;
+        /**
+         * The aliases whose leading literals end at this node
+         */
+        List<Entry> scripts;
+    }
+
+    private static class Entry {
+        final Script script;
+        final int order;
+
+        Entry(Script script, int order) {
+            this.script = script;
+            this.order = order;
+        }
+    }
+
+    private final Node root = new Node();
+    private final boolean caseSensitive;
+    private int count = 0;
+
+    public CommandTrie(boolean caseSensitive) {
+        this.caseSensitive = caseSensitive;
+    }
+
+    public CommandTrie(List<Script> scripts, boolean caseSensitive) {
+        this(caseSensitive);
+        for (Script s : scripts) {
+            add(s);
+        }
+    }
+
+    /**
+     * Adds a compiled script. Scripts should be added in the order that they should
+     * be tried in.
+     * @param s
+     */
+    public void add(Script s) {
+        Node n = root;
+        List<Construct> signature = s.getCompiledLeft();
+        if (signature != null) {
+            for (Construct c : signature) {
+                if (c.getCType() == ConstructType.VARIABLE) {
+                    break;
+                }
+                if (n.children == null) {
+                    n.children = new HashMap<String, Node>();
+                }
+                String key = fold(c.val());
+                Node next = n.children.get(key);
+                if (next == null) {
+                    next = new Node();
+                    n.children.put(key, next);
+                }
+                n = next;
+            }
+        }
+        if (n.scripts == null) {
+            n.scripts = new ArrayList<Entry>(1);
+        }
+        n.scripts.add(new Entry(s, count++));
+    }
+
+    /**
+     * Returns the scripts that might match this command, in the order they were added.
+     * @param command
+     * @return
+     */
+    public List<Script> getCandidates(String command) {
+        return collect(command.split(" "));
+    }
+
+    /**
+     * Returns the scripts with the same leading literals as this script, in the order
+     * they were added. Two signatures can only be ambiguous if their leading literals are
+     * the same, so this list can be passed to checkAmbiguous instead of every script.
+     * @param s
+     * @return
+     */
+    public List<Script> getCandidates(Script s) {
+        Node n = root;
+        List<Construct> signature = s.getCompiledLeft();
+        if (signature != null) {
+            for (Construct c : signature) {
+                if (c.getCType() == ConstructType.VARIABLE) {
+                    break;
+                }
+                n = n.children == null ? null : n.children.get(fold(c.val()));
+                if (n == null) {
+                    return new ArrayList<Script>();
+                }
+            }
+        }
+        List<Script> list = new ArrayList<Script>();
+        if (n.scripts != null) {
+            for (Entry e : n.scripts) {
+                list.add(e.script);
+            }
+        }
+        return list;
+    }
+
+    private List<Script> collect(String[] words) {
+        List<Entry> found = new ArrayList<Entry>();
+        Node n = root;
+        int i = 0;
+        while (n != null) {
+            if (n.scripts != null) {
+                found.addAll(n.scripts);
+            }
+            if (n.children == null || i >= words.length) {
+                break;
+            }
+            n = n.children.get(fold(words[i++]));
+        }
+        return sort(found);
+    }
+
+    /**
+     * Puts the entries back into the order they were added.
+     */
+    private static List<Script> sort(List<Entry> entries) {
+        if (entries.size() > 1) {
+            Collections.sort(entries, new Comparator<Entry>() {
+
+                public int compare(Entry o1, Entry o2) {
+                    return o1.order < o2.order ? -1 : (o1.order == o2.order ? 0 : 1);
+                }
+            });
+        }
+        List<Script> list = new ArrayList<Script>(entries.size());
+        for (Entry e : entries) {
+            list.add(e.script);
+        }
+        return list;
+    }
+
+    /**
+     * Folds the case of a word, if matching isn't case sensitive. This is done a character at a
+     * time, like String.equalsIgnoreCase does, so two words are folded to the same key whenever
+     * equalsIgnoreCase would consider them equal.
+     */
+    private String fold(String word) {
+        if (caseSensitive) {
+            return word;
+        }
+        char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
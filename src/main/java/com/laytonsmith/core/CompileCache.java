@@ -0,0 +1,609 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.*;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Keeps the compiled form of script files on disk, so that files which haven't changed
+ * since the last time they were compiled don't need to go through the compiler again.
+ * Each source file gets its own cache file, named after a hash of its path, which holds
+ * the optimized trees (and for msa files, the compiled alias signatures) in a simple
+ * binary format. A cache file is only used if it was written by the same version of
+ * CommandHelper, for the same path, from exactly the same file contents, otherwise it
+ * is ignored, and overwritten once the file is compiled again.
+ * <p>
+ * Only files that compiled without errors are cached, so compile errors are always
+ * reported. If a tree contains something that can't be written out (which shouldn't
+ * happen with trees straight from the compiler) the file simply isn't cached.
+ * <p>
+ * Each file is read and written independently, so the cache may be used from several
+ * compiler threads at once.
+ * @author Layton
+ */
+public class CompileCache {
+
+    private static final int MAGIC = 0x4D534343;
+    /**
+     * Increment this if the format changes
+     */
+    private static final int FORMAT = 1;
+    private static final String EXTENSION = ".msc";
+    private static final byte KIND_MSA = 'A';
+    private static final byte KIND_MS = 'S';
+
+    private final File dir;
+    private final String version;
+    private final Set<String> used = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * @param dir The folder to put the cache files in. It is created if needed.
+     * @param version The version of CommandHelper. Files cached by any other version
+     * are ignored.
+     */
+    public CompileCache(File dir, String version) {
+        this.dir = dir;
+        this.version = version;
+    }
+
+    /**
+     * Returns the compiled scripts for this msa file, or null if they aren't cached.
+     * @param file
+     * @param contents
+     * @return
+     */
+    public List<Script> getScripts(File file, String contents) {
+        DataInputStream in = open(file, contents, KIND_MSA);
+        if (in == null) {
+            return null;
+        }
+        try {
+            Reader r = new Reader(in);
+            int count = in.readInt();
+            List<Script> scripts = new ArrayList<Script>(count);
+            for (int i = 0; i < count; i++) {
+                scripts.add(r.readScript());
+            }
+            return scripts;
+        } catch (Exception e) {
+            CHLog.Log(CHLog.Tags.COMPILER, CHLog.Level.DEBUG, "Ignoring unreadable compile cache for " + file + ": " + e, Target.UNKNOWN);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Caches the compiled scripts for this msa file.
+     * @param file
+     * @param contents
+     * @param scripts
+     */
+    public void putScripts(File file, String contents, List<Script> scripts) {
+        DataOutputStream out = null;
+        File temp = null;
+        try {
+            temp = File.createTempFile("compile", ".tmp", mkdirs());
+            out = create(temp, file, contents, KIND_MSA);
+            Writer w = new Writer(out);
+            out.writeInt(scripts.size());
+            for (Script s : scripts) {
+                w.writeScript(s);
+            }
+            out.close();
+            out = null;
+            commit(temp, file, KIND_MSA);
+            temp = null;
+        } catch (IOException e) {
+            CHLog.Log(CHLog.Tags.COMPILER, CHLog.Level.DEBUG, "Could not cache " + file + ": " + e.getMessage(), Target.UNKNOWN);
+        } finally {
+            close(out);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the compiled tree for this ms file, or null if it isn't cached.
+     * @param file
+     * @param contents
+     * @return
+     */
+    public GenericTreeNode<Construct> getTree(File file, String contents) {
+        DataInputStream in = open(file, contents, KIND_MS);
+        if (in == null) {
+            return null;
+        }
+        try {
+            return new Reader(in).readTree();
+        } catch (Exception e) {
+            CHLog.Log(CHLog.Tags.COMPILER, CHLog.Level.DEBUG, "Ignoring unreadable compile cache for " + file + ": " + e, Target.UNKNOWN);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Caches the compiled tree for this ms file.
+     * @param file
+     * @param contents
+     * @param tree
+     */
+    public void putTree(File file, String contents, GenericTreeNode<Construct> tree) {
+        DataOutputStream out = null;
+        File temp = null;
+        try {
+            temp = File.createTempFile("compile", ".tmp", mkdirs());
+            out = create(temp, file, contents, KIND_MS);
+            new Writer(out).writeTree(tree);
+            out.close();
+            out = null;
+            commit(temp, file, KIND_MS);
+            temp = null;
+        } catch (IOException e) {
+            CHLog.Log(CHLog.Tags.COMPILER, CHLog.Level.DEBUG, "Could not cache " + file + ": " + e.getMessage(), Target.UNKNOWN);
+        } finally {
+            close(out);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Marks the cached scripts for this msa file as still needed, without reading them,
+     * so prune keeps them. This is for files whose scripts were reused from the last
+     * reload, rather than looked up.
+     * @param file
+     */
+    public void touchScripts(File file) {
+        used.add(cacheName(file, KIND_MSA));
+    }
+
+    /**
+     * Marks the cached tree for this ms file as still needed, without reading it, so
+     * prune keeps it. This is for files that weren't run this reload.
+     * @param file
+     */
+    public void touchTree(File file) {
+        used.add(cacheName(file, KIND_MS));
+    }
+
+    /**
+     * Deletes the cache files that haven't been looked at or touched through this object,
+     * that is, the ones for source files that no longer exist. This should be called once
+     * all the files have been compiled.
+     */
+    public void prune() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (!used.contains(f.getName())) {
+                f.delete();
+            }
+        }
+    }
+
+    private File mkdirs() {
+        dir.mkdirs();
+        return dir;
+    }
+
+    private String cacheName(File file, byte kind) {
+        return hex(sha1(file.getAbsolutePath() + (char) kind)) + EXTENSION;
+    }
+
+    /**
+     * Opens the cache file and checks the header, returning null if there is no
+     * valid cache for these contents.
+     */
+    private DataInputStream open(File file, String contents, byte kind) {
+        String name = cacheName(file, kind);
+        used.add(name);
+        File cache = new File(dir, name);
+        if (!cache.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || in.readByte() != kind
+                    || !in.readUTF().equals(version) || !in.readUTF().equals(file.getAbsolutePath())) {
+                close(in);
+                return null;
+            }
+            byte[] hash = new byte[in.readInt()];
+            in.readFully(hash);
+            if (!Arrays.equals(hash, sha1(contents))) {
+                close(in);
+                return null;
+            }
+            return in;
+        } catch (IOException e) {
+            close(in);
+            return null;
+        }
+    }
+
+    private DataOutputStream create(File temp, File file, String contents, byte kind) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeByte(kind);
+        out.writeUTF(version);
+        out.writeUTF(file.getAbsolutePath());
+        byte[] hash = sha1(contents);
+        out.writeInt(hash.length);
+        out.write(hash);
+        return out;
+    }
+
+    /**
+     * Moves the finished temp file over the cache file, so that a half written cache
+     * file is never seen.
+     */
+    private void commit(File temp, File file, byte kind) throws IOException {
+        String name = cacheName(file, kind);
+        used.add(name);
+        File cache = new File(dir, name);
+        if (!temp.renameTo(cache)) {
+            //Windows won't rename over an existing file
+            cache.delete();
+            if (!temp.renameTo(cache)) {
+                throw new IOException("Could not rename " + temp + " to " + cache);
+            }
+        }
+    }
+
+    private static void close(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                //Ignored
+            }
+        }
+    }
+
+    private static byte[] sha1(String s) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(s.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new Error(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder b = new StringBuilder(bytes.length * 2);
+        for (byte by : bytes) {
+            b.append(Character.forDigit((by >> 4) & 0xF, 16)).append(Character.forDigit(by & 0xF, 16));
+        }
+        return b.toString();
+    }
+
+    /**
+     * Thrown if a tree contains a construct that we don't know how to write out.
+     */
+    private static class UncacheableException extends IOException {
+
+        public UncacheableException(String message) {
+            super(message);
+        }
+    }
+
+    //Tags for each kind of construct in the file
+    private static final byte T_FUNCTION = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_INT = 2;
+    private static final byte T_DOUBLE = 3;
+    private static final byte T_BOOLEAN = 4;
+    private static final byte T_NULL = 5;
+    private static final byte T_VOID = 6;
+    private static final byte T_VARIABLE = 7;
+    private static final byte T_IVARIABLE = 8;
+    private static final byte T_COMMAND = 9;
+    private static final byte T_LABEL = 10;
+    private static final byte T_SLICE = 11;
+    private static final byte T_ENTRY = 12;
+    private static final byte T_IDENTIFIER = 13;
+
+    private static class Writer {
+
+        private final DataOutputStream out;
+        /**
+         * Most targets point to the same file, so each file is only written once,
+         * and after that it is referred to by its index.
+         */
+        private final Map<File, Integer> files = new HashMap<File, Integer>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeScript(Script s) throws IOException {
+            writeString(s.getLabel());
+            List<Token> left = s.getLeft();
+            out.writeInt(left.size());
+            for (Token t : left) {
+                out.writeUTF(t.type.name());
+                writeString(t.value);
+                writeTarget(t.target);
+            }
+            Map<String, Variable> vars = s.getLeftVars();
+            out.writeInt(vars.size());
+            for (Map.Entry<String, Variable> e : vars.entrySet()) {
+                writeString(e.getKey());
+                writeConstruct(e.getValue());
+            }
+            List<Construct> cleft = s.getCompiledLeft();
+            out.writeInt(cleft.size());
+            for (Construct c : cleft) {
+                writeConstruct(c);
+            }
+            List<GenericTreeNode<Construct>> cright = s.getCompiledRight();
+            out.writeInt(cright.size());
+            for (GenericTreeNode<Construct> node : cright) {
+                writeTree(node);
+            }
+        }
+
+        void writeTree(GenericTreeNode<Construct> node) throws IOException {
+            writeConstruct(node.data);
+            out.writeBoolean(node.optimized);
+            List<GenericTreeNode<Construct>> children = node.getChildren();
+            out.writeInt(children.size());
+            for (GenericTreeNode<Construct> child : children) {
+                writeTree(child);
+            }
+        }
+
+        void writeConstruct(Construct c) throws IOException {
+            Class<?> type = c.getClass();
+            if (type == CFunction.class) {
+                out.writeByte(T_FUNCTION);
+                writeString(c.getValue());
+            } else if (type == CString.class) {
+                out.writeByte(T_STRING);
+                writeString(c.getValue());
+            } else if (type == CInt.class) {
+                out.writeByte(T_INT);
+                writeString(c.getValue());
+            } else if (type == CDouble.class) {
+                out.writeByte(T_DOUBLE);
+                //Doubles parsed from source keep their original text
+                out.writeBoolean(c.getCType() == Construct.ConstructType.INT);
+                if (c.getCType() == Construct.ConstructType.INT) {
+                    writeString(c.getValue());
+                } else {
+                    out.writeDouble(((CDouble) c).getDouble());
+                }
+            } else if (type == CBoolean.class) {
+                out.writeByte(T_BOOLEAN);
+                writeString(c.getValue());
+            } else if (type == CNull.class) {
+                out.writeByte(T_NULL);
+            } else if (type == CVoid.class) {
+                out.writeByte(T_VOID);
+            } else if (type == Variable.class) {
+                Variable v = (Variable) c;
+                out.writeByte(T_VARIABLE);
+                writeString(v.getName());
+                writeString(v.getDefault());
+                out.writeBoolean(v.isOptional());
+                out.writeBoolean(v.isFinal());
+            } else if (type == IVariable.class) {
+                IVariable v = (IVariable) c;
+                //The compiler only makes empty ones, but if this one has a value, it can't be cached
+                if (v.ival().getClass() != CString.class || !v.ival().val().equals("")) {
+                    throw new UncacheableException("Assigned variable " + v.getName());
+                }
+                out.writeByte(T_IVARIABLE);
+                writeString(v.getName());
+            } else if (type == Command.class) {
+                out.writeByte(T_COMMAND);
+                writeString(c.getValue());
+            } else if (type == CLabel.class) {
+                out.writeByte(T_LABEL);
+                writeConstruct(((CLabel) c).cVal());
+            } else if (type == CSlice.class) {
+                out.writeByte(T_SLICE);
+                writeString(c.getValue());
+            } else if (type == CEntry.class) {
+                out.writeByte(T_ENTRY);
+                writeConstruct(((CEntry) c).ckey());
+                writeConstruct(((CEntry) c).construct());
+            } else if (type == CIdentifier.class) {
+                out.writeByte(T_IDENTIFIER);
+                writeString(c.getValue());
+                writeTree(((CIdentifier) c).contained());
+            } else {
+                throw new UncacheableException(type.getSimpleName());
+            }
+            if (type != CLabel.class) {
+                writeTarget(c.getTarget());
+            }
+        }
+
+        void writeTarget(Target t) throws IOException {
+            out.writeInt(t.line());
+            out.writeInt(t.col());
+            if (t.file() == null) {
+                out.writeInt(-1);
+            } else if (files.containsKey(t.file())) {
+                out.writeInt(files.get(t.file()));
+            } else {
+                out.writeInt(files.size());
+                files.put(t.file(), files.size());
+                writeString(t.file().getPath());
+            }
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = s.getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static class Reader {
+
+        private final DataInputStream in;
+        private final List<File> files = new ArrayList<File>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        Script readScript() throws IOException, ConfigCompileException {
+            String label = readString();
+            int count = in.readInt();
+            List<Token> left = new ArrayList<Token>(count);
+            for (int i = 0; i < count; i++) {
+                Token.TType type = Token.TType.valueOf(in.readUTF());
+                String value = readString();
+                left.add(new Token(type, value, readTarget()));
+            }
+            count = in.readInt();
+            Map<String, Variable> vars = new HashMap<String, Variable>();
+            for (int i = 0; i < count; i++) {
+                String name = readString();
+                vars.put(name, (Variable) readConstruct());
+            }
+            count = in.readInt();
+            List<Construct> cleft = new ArrayList<Construct>(count);
+            for (int i = 0; i < count; i++) {
+                cleft.add(readConstruct());
+            }
+            count = in.readInt();
+            List<GenericTreeNode<Construct>> cright = new ArrayList<GenericTreeNode<Construct>>(count);
+            for (int i = 0; i < count; i++) {
+                cright.add(readTree());
+            }
+            return Script.Restore(label, left, vars, cleft, cright);
+        }
+
+        GenericTreeNode<Construct> readTree() throws IOException, ConfigCompileException {
+            GenericTreeNode<Construct> node = new GenericTreeNode<Construct>(readConstruct());
+            node.optimized = in.readBoolean();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                node.addChild(readTree());
+            }
+            return node;
+        }
+
+        Construct readConstruct() throws IOException, ConfigCompileException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case T_FUNCTION: {
+                    String name = readString();
+                    CFunction f = new CFunction(name, readTarget());
+                    if (!f.isProcedure()) {
+                        //Bind it now, as the compiler would have. If the function has since
+                        //gone away, this throws, and the file is compiled from source instead.
+                        f.getFunction();
+                    }
+                    return f;
+                }
+                case T_STRING: {
+                    String value = readString();
+                    return new CString(value, readTarget());
+                }
+                case T_INT: {
+                    String value = readString();
+                    return new CInt(value, readTarget());
+                }
+                case T_DOUBLE: {
+                    if (in.readBoolean()) {
+                        String value = readString();
+                        return new CDouble(value, readTarget());
+                    } else {
+                        double value = in.readDouble();
+                        return new CDouble(value, readTarget());
+                    }
+                }
+                case T_BOOLEAN: {
+                    String value = readString();
+                    return new CBoolean(value, readTarget());
+                }
+                case T_NULL:
+                    return new CNull(readTarget());
+                case T_VOID:
+                    return new CVoid(readTarget());
+                case T_VARIABLE: {
+                    String name = readString();
+                    String def = readString();
+                    boolean optional = in.readBoolean();
+                    boolean isFinal = in.readBoolean();
+                    return new Variable(name, def, optional, isFinal, readTarget());
+                }
+                case T_IVARIABLE: {
+                    String name = readString();
+                    return new IVariable(name, readTarget());
+                }
+                case T_COMMAND: {
+                    String value = readString();
+                    return new Command(value, readTarget());
+                }
+                case T_LABEL:
+                    return new CLabel(readConstruct());
+                case T_SLICE: {
+                    String value = readString();
+                    return new CSlice(value, readTarget());
+                }
+                case T_ENTRY: {
+                    Construct key = readConstruct();
+                    Construct value = readConstruct();
+                    return new CEntry(key, value, readTarget());
+                }
+                case T_IDENTIFIER: {
+                    String type = readString();
+                    GenericTreeNode<Construct> contained = readTree();
+                    return new CIdentifier(type, contained, readTarget());
+                }
+                default:
+                    throw new IOException("Unknown construct type " + tag);
+            }
+        }
+
+        Target readTarget() throws IOException {
+            int line = in.readInt();
+            int col = in.readInt();
+            int index = in.readInt();
+            File file = null;
+            if (index == files.size()) {
+                file = new File(readString());
+                files.add(file);
+            } else if (index >= 0) {
+                file = files.get(index);
+            }
+            if (line == 0 && col == 0 && file == null) {
+                return Target.UNKNOWN;
+            }
+            return new Target(line, file, col);
+        }
+
+        String readString() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.laytonsmith.abstraction.MCCommandSender;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.core.constructs.IVariableList;
 import com.laytonsmith.core.events.BoundEvent;
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -29,6 +30,14 @@ public final class Env implements Cloneable{
     private Script script = null;
     private BoundEvent.ActiveEvent event = null;
     private String command = null;
+    private File sourceFile = null;
+    private Map<String, String> dollarVars = null;
+    /**
+     * If true, custom, flags and procs may also be referenced by a clone of this
+     * environment (or the environment this was cloned from), and must be copied
+     * before they are changed.
+     */
+    private boolean shared = false;
     
     /*
      * The constructor has relatively little to do, most things are lazy
@@ -45,6 +54,7 @@ public final class Env implements Cloneable{
      * @param value 
      */
     public void SetFlag(String name, boolean value){
+        copyIfShared();
         flags.put(name, value);
     }
     
@@ -66,6 +76,7 @@ public final class Env implements Cloneable{
      * @param name 
      */
     public void ClearFlag(String name){
+        copyIfShared();
         flags.remove(name);
     }
     
@@ -77,6 +88,7 @@ public final class Env implements Cloneable{
      * @param var 
      */
     public void SetCustom(String name, Object var){
+        copyIfShared();
         if(!custom.containsKey("custom")){
             custom.put("custom", new HashMap<String, Object>());
         }
@@ -90,7 +102,7 @@ public final class Env implements Cloneable{
      */
     public Object GetCustom(String name){
         if(!custom.containsKey("custom")){
-            custom.put("custom", new HashMap<String, Object>());
+            return null;
         }
         return ((Map<String, Object>)custom.get("custom")).get(name);
     }
@@ -157,21 +169,48 @@ public final class Env implements Cloneable{
     /**
      * Returns the Map of known procedures in this environment. If the list
      * of procedures is currently empty, a new one is created and stored in
-     * the environment.
+     * the environment. The map may be changed, so if it is shared with a
+     * clone, it is copied first; to just look up a procedure, use GetProc.
      * @param env
      * @return 
      */
     public Map<String, Procedure> GetProcs(){
+        copyIfShared();
         if(procs == null){
             procs = new HashMap<String, Procedure>();
         }
         return procs;
     }
     
+    /**
+     * Returns the procedure with the given name, or null if it isn't known
+     * in this environment.
+     * @param name
+     * @return 
+     */
+    public Procedure GetProc(String name){
+        if(procs == null){
+            return null;
+        }
+        return procs.get(name);
+    }
+    
     public void SetProcs(Map<String, Procedure> procs){
+        copyIfShared();
         this.procs = procs;
     }
     
+    private void copyIfShared(){
+        if(shared){
+            custom = new HashMap<String, Object>(custom);
+            flags = new HashMap<String, Boolean>(flags);
+            if(procs != null){
+                procs = new HashMap<String, Procedure>(procs);
+            }
+            shared = false;
+        }
+    }
+    
     public String GetLabel(){
         return label;
     }
@@ -203,25 +242,26 @@ public final class Env implements Cloneable{
     @Override
     public Env clone() throws CloneNotSupportedException{
         Env clone = new Env();
-        clone.custom = new HashMap<String, Object>(this.custom);
+        //The maps are shared until one of the environments changes them, since
+        //most clones (one per event handler run, for instance) never do.
+        if(procs == null){
+            procs = new HashMap<String, Procedure>();
+        }
+        clone.custom = custom;
+        clone.flags = flags;
+        clone.procs = procs;
+        clone.shared = true;
+        this.shared = true;
         clone.commandSender = commandSender;
         clone.event = event;
-        if(flags != null){
-            clone.flags = new HashMap<String, Boolean>(flags);
-        } else {
-            clone.flags = new HashMap<String, Boolean>();
-        }
         clone.label = label;
-        if(procs != null){
-            clone.procs = new HashMap<String, Procedure>(procs);
-        } else {
-            clone.procs = new HashMap<String, Procedure>();
-        }
         clone.script = script;
         if(iVariableList != null){
             clone.iVariableList = (IVariableList) iVariableList.clone();
         }
         clone.command = command;
+        clone.sourceFile = sourceFile;
+        clone.dollarVars = dollarVars;
         return clone;
     }
 
@@ -232,4 +272,41 @@ public final class Env implements Cloneable{
     public String GetCommand(){
         return this.command;
     }
+    
+    /**
+     * Sets the ms file that this environment was created to run. Event bindings and
+     * scheduled tasks are tagged with this, so that they can be removed if just this
+     * file is reloaded.
+     * @param file 
+     */
+    public void SetSourceFile(File file){
+        this.sourceFile = file;
+    }
+    
+    /**
+     * Returns the ms file that this environment was created to run, or null if it
+     * wasn't created by running an ms file (for instance, if it's an alias).
+     * @return 
+     */
+    public File GetSourceFile(){
+        return sourceFile;
+    }
+    
+    /**
+     * Sets the values of the $variables, for the alias that this environment was
+     * created to run. The map shouldn't be changed once it's set.
+     * @param dollarVars 
+     */
+    public void SetDollarVars(Map<String, String> dollarVars){
+        this.dollarVars = dollarVars;
+    }
+    
+    /**
+     * Returns the values of the $variables, by name, or null if this environment
+     * isn't running an alias.
+     * @return 
+     */
+    public Map<String, String> GetDollarVars(){
+        return dollarVars;
+    }
 }
@@ -10,7 +10,6 @@ import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Compiler;
 import com.laytonsmith.core.functions.Function;
-import com.laytonsmith.core.functions.FunctionList;
 import com.laytonsmith.core.functions.IncludeCache;
 import java.io.File;
 import java.util.*;
@@ -23,558 +22,480 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class MethodScriptCompiler {
 
-    public static List<Token> lex(String config, File file) throws ConfigCompileException {
-        config = config.replaceAll("\r\n", "\n");
-        config = config + "\n";
-        List<Token> token_list = new ArrayList<Token>();
-        //Set our state variables
-        boolean state_in_quote = false;
-        boolean in_smart_quote = false;
-        boolean in_comment = false;
-        boolean comment_is_block = false;
-        boolean in_opt_var = false;
-        StringBuffer buf = new StringBuffer();
-        int line_num = 1;
-        int column = 1;
-        int lastColumn = 0;
-        Target target = Target.UNKNOWN;
-        //first we lex
-        for (int i = 0; i < config.length(); i++) {
-            Character c = config.charAt(i);
-            Character c2 = null;
-            Character c3 = null;
-            if (i < config.length() - 1) {
-                c2 = config.charAt(i + 1);
-            }
-            if(i < config.length() - 2){
-                c3 = config.charAt(i + 2);
-            }
+    public static List<Token> lex(CharSequence config, File file) throws ConfigCompileException {
+        return new Lexer(config, file).lex();
+    }
 
-            column += i - lastColumn;
-            lastColumn = i;
-            if (c == '\n') {
-                line_num++;
-                column = 1;
-            }
-            target = new Target(line_num, file, column);
-//            if ((token_list.isEmpty() || token_list.get(token_list.size() - 1).type.equals(TType.NEWLINE))
-//                    && c == '#') {
-            if ((c == '#' || (c == '/' && (c2 == '*'))) && !in_comment && !state_in_quote) {
-                in_comment = true;
-                if (c == '/' && c2 == '*') {
-                    comment_is_block = true;
-                    i++;
-                }
-                continue;
-            }
-            if (in_comment) {
-                if (!comment_is_block && c != '\n' || comment_is_block && c != '*' && (c2 != null && c2 != '/')) {
-                    continue;
-                }
-            }
-            if (c == '*' && c2 == '/' && in_comment && comment_is_block) {
-                in_comment = false;
-                comment_is_block = false;
-                i++;
-                continue;
-            }
-            //This has to come before subtraction and greater than
-            if (c == '-' && c2 == '>' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.DEREFERENCE, "->", target));
-                i++;
-                continue;
-            }
-            //Increment and decrement must come before plus and minus
-            if(c == '+' && c2 == '+' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.INCREMENT, "++", target));
-                i++;
-                continue;                
-            }
-            if(c == '-' && c2 == '-' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.DECREMENT, "--", target));
-                i++;
-                continue;                
-            }
-            
-            if(c == '%' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.MODULO, "%", target));
-                continue;                                
-            }
-            
-            //Math symbols must come after comment parsing, due to /* and */ block comments
-            if(c == '*' && !state_in_quote){ //Block comments are caught above
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.MULTIPLICATION, "*", target));
-                continue;
-            }
-            if(c == '+' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.ADDITION, "+", target));
-                continue;
-            }
-            if(c == '-' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.SUBTRACTION, "-", target));  
-                continue;
-            }
-            //Protect against commands
-            if(c == '/' && !Character.isLetter(c2) && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.DIVISION, "/", target));  
-                continue;
-            }
-            //Logic symbols
-            if(c == '>' && c2 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.GTE, ">=", target));  
-                i++;
-                continue;
-            }
-            if(c == '<' && c2 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LTE, "<=", target));  
-                i++;
-                continue;
-            }
-            //multiline has to come before gt/lt
-            if(c == '<' && c2 == '<' && c3 == '<' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.MULTILINE_END, "<<<", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '>' && c2 == '>' && c3 == '>' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.MULTILINE_START, ">>>", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '<' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LT, "<", target));  
-                continue;
-            }
-            if(c == '>' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.GT, ">", target));  
-                continue;
-            }
-            if(c == '=' && c2 == '=' && c3 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.STRICT_EQUALS, "===", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '!' && c2 == '=' && c3 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.STRICT_NOT_EQUALS, "!==", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '=' && c2 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.EQUALS, "==", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '!' && c2 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.NOT_EQUALS, "!=", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '&' && c2 == '&' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LOGICAL_AND, "&&", target));  
-                i++;
-                continue;
-            }
-            if(c == '|' && c2 == '|' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LOGICAL_OR, "||", target));  
-                i++;
-                continue;
-            }
-            if(c == '!' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LOGICAL_NOT, "!", target));  
-                continue;
-            }
-            if(c == '{' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LCURLY_BRACKET, "{", target));
-                continue;
-            }
-            if(c == '}' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.RCURLY_BRACKET, "}", target));
-                continue;
-            }
-            //I don't want to use these symbols yet, especially since bitwise operations are rare.
-//            if(c == '&' && !state_in_quote){
-//                if (buf.length() > 0) {
-//                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-//                    buf = new StringBuffer();
-//                }
-//                token_list.add(new Token(TType.BIT_AND, "&", target));  
-//                continue;
-//            }
-//            if(c == '|' && !state_in_quote){
-//                if (buf.length() > 0) {
-//                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-//                    buf = new StringBuffer();
-//                }
-//                token_list.add(new Token(TType.BIT_OR, "|", target));  
-//                continue;
-//            }
-//            if(c == '^' && !state_in_quote){
-//                if (buf.length() > 0) {
-//                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-//                    buf = new StringBuffer();
-//                }
-//                token_list.add(new Token(TType.BIT_XOR, "^", target));  
-//                continue;
-//            }
-            
-            if (c == '.' && c2 == '.' && !state_in_quote) {
-                //This one has to come before plain .
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.SLICE, "..", target));
-                i++;
-                continue;
-            }
-            if (c == '.' && !Character.isDigit(c2) && !state_in_quote) {
-                //if it's a number after this, it's a decimal
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.CONCAT, ".", target));
-                continue;
-            }
-            if (c == ':' && c2 == ':' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+    /**
+     * The lexer state. The input is read a character at a time, with "\r\n" read as "\n",
+     * and a final newline added, without copying the input. Tokens are built up in a single
+     * buffer, and a Target is only created when a token actually needs one.
+     */
+    private static final class Lexer {
+
+        private final CharSequence config;
+        private final File file;
+        private int configPos = 0;
+        private boolean endAdded = false;
+        /**
+         * A ring buffer of the characters we've looked ahead at. The current character is
+         * at start; no more than 6 characters are ever needed at once.
+         */
+        private final char[] ahead = new char[8];
+        private int start = 0;
+        private int count = 0;
+        /**
+         * The position of the current character in the normalized input
+         */
+        private int pos = 0;
+        private final List<Token> token_list = new ArrayList<Token>();
+        private final StringBuilder buf = new StringBuilder();
+        private int line_num = 1;
+        private int column = 1;
+        private Target target;
+
+        Lexer(CharSequence config, File file) {
+            this.config = config;
+            this.file = file;
+        }
+
+        /**
+         * Returns the character k places after the current one, or -1 if
+         * that is past the end of the input.
+         */
+        private int peek(int k) {
+            while (count <= k) {
+                int c;
+                if (configPos < config.length()) {
+                    c = config.charAt(configPos++);
+                    if (c == '\r' && configPos < config.length() && config.charAt(configPos) == '\n') {
+                        c = '\n';
+                        configPos++;
+                    }
+                } else if (!endAdded) {
+                    c = '\n';
+                    endAdded = true;
+                } else {
+                    return -1;
                 }
-                token_list.add(new Token(TType.DEREFERENCE, "::", target));
-                i++;
-                continue;
+                ahead[(start + count) & 7] = (char) c;
+                count++;
             }
-            if (c == '[' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LSQUARE_BRACKET, "[", target));
-                in_opt_var = true;
-                continue;
+            return ahead[(start + k) & 7];
+        }
+
+        /**
+         * Moves past the current character, which must already have been peeked at.
+         */
+        private void advance() {
+            start = (start + 1) & 7;
+            count--;
+            pos++;
+        }
+
+        private Target target() {
+            if (target == null) {
+                target = new Target(line_num, file, column);
             }
-            //This has to come after == and ===
-            if (c == '=' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                if (in_opt_var) {
-                    token_list.add(new Token(TType.OPT_VAR_ASSIGN, "=", target));
-                } else {
-                    token_list.add(new Token(TType.ALIAS_END, "=", target));
-                }
-                continue;
+            return target;
+        }
+
+        private void add(TType type, String value) {
+            token_list.add(new Token(type, value, target()));
+        }
+
+        /**
+         * Adds whatever is in the buffer as a token of the specified type, if
+         * there is anything in it.
+         */
+        private void flush(TType type) {
+            if (buf.length() > 0) {
+                add(type, buf.toString());
+                buf.setLength(0);
             }
-            if (c == ']' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+        }
+
+        /**
+         * Adds a symbol token, after first ending the previous token.
+         */
+        private void symbol(TType type, String value) {
+            flush(TType.UNKNOWN);
+            add(type, value);
+        }
+
+        List<Token> lex() throws ConfigCompileException {
+            //Set our state variables
+            boolean state_in_quote = false;
+            boolean in_smart_quote = false;
+            boolean in_comment = false;
+            boolean comment_is_block = false;
+            boolean in_opt_var = false;
+            int lastColumn = 0;
+            //first we lex
+            for (; peek(0) != -1; advance()) {
+                char c = (char) peek(0);
+                //-1 if we're at the end
+                int c2 = peek(1);
+                int c3 = peek(2);
+
+                if (pos != lastColumn) {
+                    column += pos - lastColumn;
+                    lastColumn = pos;
+                    target = null;
+                }
+                if (c == '\n') {
+                    line_num++;
+                    column = 1;
+                    target = null;
+                }
+                if ((c == '#' || (c == '/' && (c2 == '*'))) && !in_comment && !state_in_quote) {
+                    in_comment = true;
+                    if (c == '/' && c2 == '*') {
+                        comment_is_block = true;
+                        advance();
+                    }
+                    continue;
                 }
-                token_list.add(new Token(TType.RSQUARE_BRACKET, "]", target));
-                in_opt_var = false;
-                continue;
-            }
-            if (c == ':' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+                if (in_comment) {
+                    if (!comment_is_block && c != '\n' || comment_is_block && c != '*' && (c2 != -1 && c2 != '/')) {
+                        continue;
+                    }
                 }
-                token_list.add(new Token(TType.LABEL, ":", target));
-                continue;
-            }
-            if (c == ',' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+                if (c == '*' && c2 == '/' && in_comment && comment_is_block) {
+                    in_comment = false;
+                    comment_is_block = false;
+                    advance();
+                    continue;
                 }
-                token_list.add(new Token(TType.COMMA, ",", target));
-                continue;
-            }
-            if (c == '(' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.FUNC_NAME, buf.toString(), target));
-                    buf = new StringBuffer();
-                } else {
-                    //The previous token, if unknown, should be changed to a FUNC_NAME. If it's not
-                    //unknown, we may be doing standalone parenthesis, so auto tack on the __autoconcat__ function
-                    try {
-                        int count = 1;
-                        while(token_list.get(token_list.size() - count).type == TType.WHITESPACE){
-                            count++;
+                if (state_in_quote) {
+                    //None of the symbols mean anything inside a string
+                } else if (c == '-' && c2 == '>') {
+                    //This has to come before subtraction and greater than
+                    symbol(TType.DEREFERENCE, "->");
+                    advance();
+                    continue;
+                } else if (c == '+' && c2 == '+') {
+                    //Increment and decrement must come before plus and minus
+                    symbol(TType.INCREMENT, "++");
+                    advance();
+                    continue;
+                } else if (c == '-' && c2 == '-') {
+                    symbol(TType.DECREMENT, "--");
+                    advance();
+                    continue;
+                } else if (c == '%') {
+                    symbol(TType.MODULO, "%");
+                    continue;
+                } else if (c == '*') {
+                    //Math symbols must come after comment parsing, due to /* and */ block comments
+                    symbol(TType.MULTIPLICATION, "*");
+                    continue;
+                } else if (c == '+') {
+                    symbol(TType.ADDITION, "+");
+                    continue;
+                } else if (c == '-') {
+                    symbol(TType.SUBTRACTION, "-");
+                    continue;
+                } else if (c == '/' && !Character.isLetter(c2)) {
+                    //Protect against commands
+                    symbol(TType.DIVISION, "/");
+                    continue;
+                } else if (c == '>' && c2 == '=') {
+                    //Logic symbols
+                    symbol(TType.GTE, ">=");
+                    advance();
+                    continue;
+                } else if (c == '<' && c2 == '=') {
+                    symbol(TType.LTE, "<=");
+                    advance();
+                    continue;
+                } else if (c == '<' && c2 == '<' && c3 == '<') {
+                    //multiline has to come before gt/lt
+                    symbol(TType.MULTILINE_END, "<<<");
+                    advance();
+                    advance();
+                    continue;
+                } else if (c == '>' && c2 == '>' && c3 == '>') {
+                    symbol(TType.MULTILINE_START, ">>>");
+                    advance();
+                    advance();
+                    continue;
+                } else if (c == '<') {
+                    symbol(TType.LT, "<");
+                    continue;
+                } else if (c == '>') {
+                    symbol(TType.GT, ">");
+                    continue;
+                } else if (c == '=' && c2 == '=' && c3 == '=') {
+                    symbol(TType.STRICT_EQUALS, "===");
+                    advance();
+                    advance();
+                    continue;
+                } else if (c == '!' && c2 == '=' && c3 == '=') {
+                    symbol(TType.STRICT_NOT_EQUALS, "!==");
+                    advance();
+                    advance();
+                    continue;
+                } else if (c == '=' && c2 == '=') {
+                    symbol(TType.EQUALS, "==");
+                    advance();
+                    advance();
+                    continue;
+                } else if (c == '!' && c2 == '=') {
+                    symbol(TType.NOT_EQUALS, "!=");
+                    advance();
+                    advance();
+                    continue;
+                } else if (c == '&' && c2 == '&') {
+                    symbol(TType.LOGICAL_AND, "&&");
+                    advance();
+                    continue;
+                } else if (c == '|' && c2 == '|') {
+                    symbol(TType.LOGICAL_OR, "||");
+                    advance();
+                    continue;
+                } else if (c == '!') {
+                    symbol(TType.LOGICAL_NOT, "!");
+                    continue;
+                } else if (c == '{') {
+                    symbol(TType.LCURLY_BRACKET, "{");
+                    continue;
+                } else if (c == '}') {
+                    symbol(TType.RCURLY_BRACKET, "}");
+                    continue;
+                } else if (c == '.' && c2 == '.') {
+                    //This one has to come before plain .
+                    symbol(TType.SLICE, "..");
+                    advance();
+                    continue;
+                } else if (c == '.' && !Character.isDigit(c2)) {
+                    //if it's a number after this, it's a decimal
+                    symbol(TType.CONCAT, ".");
+                    continue;
+                } else if (c == ':' && c2 == ':') {
+                    symbol(TType.DEREFERENCE, "::");
+                    advance();
+                    continue;
+                } else if (c == '[') {
+                    symbol(TType.LSQUARE_BRACKET, "[");
+                    in_opt_var = true;
+                    continue;
+                } else if (c == '=') {
+                    //This has to come after == and ===
+                    symbol(in_opt_var ? TType.OPT_VAR_ASSIGN : TType.ALIAS_END, "=");
+                    continue;
+                } else if (c == ']') {
+                    symbol(TType.RSQUARE_BRACKET, "]");
+                    in_opt_var = false;
+                    continue;
+                } else if (c == ':') {
+                    symbol(TType.LABEL, ":");
+                    continue;
+                } else if (c == ',') {
+                    symbol(TType.COMMA, ",");
+                    continue;
+                } else if (c == '(') {
+                    if (buf.length() > 0) {
+                        flush(TType.FUNC_NAME);
+                    } else {
+                        //The previous token, if unknown, should be changed to a FUNC_NAME. If it's not
+                        //unknown, we may be doing standalone parenthesis, so auto tack on the __autoconcat__ function
+                        int last = token_list.size() - 1;
+                        while (last >= 0 && token_list.get(last).type == TType.WHITESPACE) {
+                            last--;
                         }
-                        if (token_list.get(token_list.size() - count).type == TType.UNKNOWN) {
-                            token_list.get(token_list.size() - count).type = TType.FUNC_NAME;
+                        if (last >= 0 && token_list.get(last).type == TType.UNKNOWN) {
+                            token_list.get(last).type = TType.FUNC_NAME;
                             //Go ahead and remove the whitespace here too, it breaks things
-                            count--;
-                            for(int a = 0; a < count; a++){
+                            while (token_list.size() - 1 > last) {
                                 token_list.remove(token_list.size() - 1);
                             }
                         } else {
-                            token_list.add(new Token(TType.FUNC_NAME, "__autoconcat__", target));
+                            add(TType.FUNC_NAME, "__autoconcat__");
                         }
-                    } catch (IndexOutOfBoundsException e) {
-                        //This is the first element on the list, so, it's another autoconcat.
-                        token_list.add(new Token(TType.FUNC_NAME, "__autoconcat__", target));
-                    }
-                }
-                token_list.add(new Token(TType.FUNC_START, "(", target));
-                continue;
-            }
-            if (c == ')' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.FUNC_END, ")", target));
-                continue;
-            }
-            if(Character.isWhitespace(c) && !state_in_quote && c != '\n') {
-                //keep the whitespace, but end the previous token, unless the last character
-                //was also whitespace. All whitespace is added as a single space.                
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                if(token_list.size() > 0 
-                        && token_list.get(token_list.size() - 1).type != TType.WHITESPACE){
-                    token_list.add(new Token(TType.WHITESPACE, " ", target));
-                }
-                continue;
-            }
-            if (c == '\'') {
-                if (state_in_quote && !in_smart_quote) {
-                    token_list.add(new Token(TType.STRING, buf.toString(), target));
-                    buf = new StringBuffer();
-                    state_in_quote = false;
-                    continue;
-                } else if (!state_in_quote) {
-                    state_in_quote = true;
-                    in_smart_quote = false;
-                    if (buf.length() > 0) {
-                        token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                        buf = new StringBuffer();
                     }
+                    add(TType.FUNC_START, "(");
                     continue;
-                } else {
-                    //we're in a smart quote
-                    buf.append("'");
-                }
-            } else if (c == '"') {
-                if (state_in_quote && in_smart_quote) {
-                    //For now, since this feature isn't fully implemented, just throw an exception
-                    if (true) {
-                        throw new ConfigCompileException("Doubly quoted strings are not yet supported.", target);
-                    }
-                    token_list.add(new Token(TType.SMART_STRING, buf.toString(), target));
-                    buf = new StringBuffer();
-                    state_in_quote = false;
+                } else if (c == ')') {
+                    symbol(TType.FUNC_END, ")");
                     continue;
-                } else if (!state_in_quote) {
-                    state_in_quote = true;
-                    in_smart_quote = true;
-                    if (buf.length() > 0) {
-                        token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                        buf = new StringBuffer();
+                } else if (Character.isWhitespace(c) && c != '\n') {
+                    //keep the whitespace, but end the previous token, unless the last character
+                    //was also whitespace. All whitespace is added as a single space.
+                    flush(TType.UNKNOWN);
+                    if (token_list.size() > 0
+                            && token_list.get(token_list.size() - 1).type != TType.WHITESPACE) {
+                        add(TType.WHITESPACE, " ");
                     }
                     continue;
-                } else {
-                    //we're in normal quotes
-                    buf.append('"');
                 }
-            } else if (c == '\\') {
-                //escaped characters
-                if (state_in_quote) {
-                    if (c2 == '\\') {
-                        buf.append("\\");
-                    } else if (c2 == '\'' && !in_smart_quote) {
-                        buf.append("'");
-                    } else if (c2 == '"' && in_smart_quote) {
+                if (c == '\'') {
+                    if (state_in_quote && !in_smart_quote) {
+                        add(TType.STRING, buf.toString());
+                        buf.setLength(0);
+                        state_in_quote = false;
+                        continue;
+                    } else if (!state_in_quote) {
+                        state_in_quote = true;
+                        in_smart_quote = false;
+                        flush(TType.UNKNOWN);
+                        continue;
+                    } else {
+                        //we're in a smart quote
+                        buf.append('\'');
+                    }
+                } else if (c == '"') {
+                    if (state_in_quote && in_smart_quote) {
+                        //For now, since this feature isn't fully implemented, just throw an exception
+                        throw new ConfigCompileException("Doubly quoted strings are not yet supported.", target());
+                    } else if (!state_in_quote) {
+                        state_in_quote = true;
+                        in_smart_quote = true;
+                        flush(TType.UNKNOWN);
+                        continue;
+                    } else {
+                        //we're in normal quotes
                         buf.append('"');
-                    } else if (c2 == 'n') {
-                        buf.append("\n");
-                    } else if (c2 == 'u') {
-                        //Grab the next 4 characters, and check to see if they are numbers
-                        StringBuilder unicode = new StringBuilder();
-                        for (int m = 0; m < 4; m++) {
-                            unicode.append(config.charAt(i + 2 + m));
-                        }
-                        try {
-                            Integer.parseInt(unicode.toString(), 16);
-                        } catch (NumberFormatException e) {
-                            throw new ConfigCompileException("Unrecognized unicode escape sequence", target);
+                    }
+                } else if (c == '\\') {
+                    //escaped characters
+                    if (state_in_quote) {
+                        if (c2 == '\\') {
+                            buf.append('\\');
+                        } else if (c2 == '\'' && !in_smart_quote) {
+                            buf.append('\'');
+                        } else if (c2 == '"' && in_smart_quote) {
+                            buf.append('"');
+                        } else if (c2 == 'n') {
+                            buf.append('\n');
+                        } else if (c2 == 'u') {
+                            //Grab the next 4 characters, and check to see if they are numbers
+                            char[] unicode = new char[4];
+                            for (int m = 0; m < 4; m++) {
+                                int u = peek(2 + m);
+                                if (u == -1) {
+                                    throw new ConfigCompileException("Unrecognized unicode escape sequence", target());
+                                }
+                                unicode[m] = (char) u;
+                            }
+                            int codePoint;
+                            try {
+                                codePoint = Integer.parseInt(new String(unicode), 16);
+                            } catch (NumberFormatException e) {
+                                throw new ConfigCompileException("Unrecognized unicode escape sequence", target());
+                            }
+                            buf.append(Character.toChars(codePoint));
+                            for (int m = 0; m < 4; m++) {
+                                advance();
+                            }
+                        } else {
+                            //Since we might expand this list later, don't let them
+                            //use unescaped backslashes
+                            throw new ConfigCompileException("The escape sequence \\" + (c2 == -1 ? "null" : String.valueOf((char) c2))
+                                    + " is not a recognized escape sequence", target());
                         }
-                        buf.append(Character.toChars(Integer.parseInt(unicode.toString(), 16)));
-                        i += 4;
+
+                        advance();
+                        continue;
                     } else {
-                        //Since we might expand this list later, don't let them
-                        //use unescaped backslashes
-                        throw new ConfigCompileException("The escape sequence \\" + c2 + " is not a recognized escape sequence", target);
+                        //Control character backslash
+                        add(TType.SEPERATOR, "\\");
                     }
-
-                    i++;
+                } else if (state_in_quote) {
+                    buf.append(c);
+                    continue;
+                } else if (c == '\n' && !comment_is_block) {
+                    flush(TType.UNKNOWN);
+                    add(TType.NEWLINE, "\n");
+                    in_comment = false;
+                    comment_is_block = false;
+                    continue;
+                } else { //in a literal
+                    buf.append(c);
                     continue;
-                } else {
-                    //Control character backslash
-                    token_list.add(new Token(TType.SEPERATOR, "\\", target));
                 }
-            } else if (state_in_quote) {
-                buf.append(c);
-                continue;
-            } else if (c == '\n' && !comment_is_block) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+            } //end lexing
+            if (state_in_quote) {
+                throw new ConfigCompileException("Unended string literal", target());
+            }
+            if (in_comment || comment_is_block) {
+                throw new ConfigCompileException("Unended comment", target());
+            }
+            //look at the tokens, and get meaning from them. Also, look for improper symbol locations,
+            //and go ahead and absorb unary +- into the token. Absorbed signs are left out as the list
+            //is copied, rather than removed from the middle of it.
+            List<Token> tokens = new ArrayList<Token>(token_list.size());
+            for (int i = 0; i < token_list.size(); i++) {
+                Token t = token_list.get(i);
+                int size = tokens.size();
+                TType prev2 = size >= 2 ? tokens.get(size - 2).type : TType.UNKNOWN;
+                TType prev1 = size >= 1 ? tokens.get(size - 1).type : TType.UNKNOWN;
+                TType next = i + 1 < token_list.size() ? token_list.get(i + 1).type : TType.UNKNOWN;
+
+                if (t.type == TType.UNKNOWN && prev1.isPlusMinus() && !prev2.isIdentifier()) {
+                    //It is a negative/positive number. Absorb the sign
+                    t.value = tokens.remove(size - 1).value + t.value;
                 }
-                token_list.add(new Token(TType.NEWLINE, "\n", target));
-                in_comment = false;
-                comment_is_block = false;
-                continue;
-            } else { //in a literal
-                buf.append(c);
-                continue;
+
+                if (t.type == TType.UNKNOWN) {
+                    t.type = classify(t.val());
+                }
+                if (t.type.isSymbol() && !t.type.isUnary() && !next.isUnary()) {
+                    if (prev1 == TType.FUNC_START || prev1 == TType.COMMA
+                            || next == TType.FUNC_END || next == TType.COMMA
+                            || prev1.isSymbol() || next.isSymbol()) {
+                        throw new ConfigCompileException("Unexpected symbol (" + t.val() + ")", target());
+                    }
+                }
+                tokens.add(t);
             }
-        } //end lexing
-        if (state_in_quote) {
-            throw new ConfigCompileException("Unended string literal", target);
-        }
-        if (in_comment || comment_is_block) {
-            throw new ConfigCompileException("Unended comment", target);
+            return tokens;
         }
-        //look at the tokens, and get meaning from them. Also, look for improper symbol locations,
-        //and go ahead and absorb unary +- into the token
-        for (int i = 0; i < token_list.size(); i++) {
-            Token t = token_list.get(i);
-            Token prev2 = i - 2 >= 0 ? token_list.get(i - 2) : new Token(TType.UNKNOWN, "", t.target);
-            Token prev1 = i - 1 >= 0 ? token_list.get(i - 1) : new Token(TType.UNKNOWN, "", t.target);
-            Token next = i + 1 < token_list.size() ? token_list.get(i + 1) : new Token(TType.UNKNOWN, "", t.target);
-            
-            if(t.type == TType.UNKNOWN && prev1.type.isPlusMinus() &&
-                    !prev2.type.isIdentifier()){
-                //It is a negative/positive number. Absorb the sign
-                t.value = prev1.value + t.value;
-                token_list.remove(i - 1);
-                i--;
+
+        /**
+         * Works out what kind of token an unknown token is.
+         */
+        private static TType classify(String val) {
+            if (val.length() > 0 && val.charAt(0) == '/' && !hasLineTerminator(val)) {
+                return TType.COMMAND;
+            } else if (val.equals("\\")) {
+                return TType.SEPERATOR;
+            } else if (val.length() > 1 && val.charAt(0) == '$' && isWord(val)) {
+                return TType.VARIABLE;
+            } else if (val.length() > 1 && val.charAt(0) == '@' && isWord(val)) {
+                return TType.IVARIABLE;
+            } else if (val.equals("$")) {
+                return TType.FINAL_VAR;
+            } else {
+                return TType.LIT;
             }
-            
-            if (t.type.equals(TType.UNKNOWN)) {
-                if (t.val().matches("/.*")) {
-                    t.type = TType.COMMAND;
-                } else if (t.val().matches("\\\\")) {
-                    t.type = TType.SEPERATOR;
-                } else if (t.val().matches("\\$[a-zA-Z0-9_]+")) {
-                    t.type = TType.VARIABLE;
-                } else if (t.val().matches("\\@[a-zA-Z0-9_]+")) {
-                    t.type = TType.IVARIABLE;
-                } else if (t.val().equals("$")) {
-                    t.type = TType.FINAL_VAR;
-                } else {
-                    t.type = TType.LIT;
+        }
+
+        /**
+         * Returns true if everything after the first character is [a-zA-Z0-9_]
+         */
+        private static boolean isWord(String val) {
+            for (int i = 1; i < val.length(); i++) {
+                char c = val.charAt(i);
+                if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) {
+                    return false;
                 }
             }
-            if(t.type.isSymbol() && !t.type.isUnary() && !next.type.isUnary()){
-                if(prev1.type.equals(TType.FUNC_START) || prev1.type.equals(TType.COMMA)
-                || next.type.equals(TType.FUNC_END) || next.type.equals(TType.COMMA)
-                || prev1.type.isSymbol() || next.type.isSymbol()){
-                    throw new ConfigCompileException("Unexpected symbol (" + t.val() + ")", target);                    
+            return true;
+        }
+
+        /**
+         * Returns true if the string has any of the characters that . doesn't match in a regex
+         */
+        private static boolean hasLineTerminator(String val) {
+            for (int i = 0; i < val.length(); i++) {
+                char c = val.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    return true;
                 }
-            }                            
-            
+            }
+            return false;
         }
-        return token_list;
     }
 
     /**
@@ -938,8 +859,8 @@ public class MethodScriptCompiler {
             } else if (t.type.equals(TType.FUNC_NAME)) {
                 CFunction func = new CFunction(t.val(), t.target);
                 //This will throw an exception for us if the function doesn't exist
-                if (!func.val().matches("^_[^_].*")) {
-                    FunctionList.getFunction(func);
+                if (!func.isProcedure()) {
+                    func.getFunction();
                 }
                 GenericTreeNode<Construct> f = new GenericTreeNode<Construct>(func);
                 tree.addChild(f);
@@ -960,7 +881,7 @@ public class MethodScriptCompiler {
                 GenericTreeNode<Construct> function = parents.pop();
                 if(usesBraces.peek().get()){
                     try{
-                        Function f = (Function)FunctionList.getFunction(function.data);
+                        Function f = ((CFunction)function.data).getFunction();
                         if(!f.allowBraces()){
                             throw new ConfigCompileException("Improper use of braces with " + f.getName() + "()", t.target);
                         }
@@ -991,8 +912,8 @@ public class MethodScriptCompiler {
                 }
                 //Check argument number now
                 if (tree.getData().val() != null) {
-                    if (!tree.getData().val().matches("^_[^_].*")) {
-                        Integer[] numArgs = FunctionList.getFunction(tree.getData()).numArgs();
+                    if (!((CFunction)tree.getData()).isProcedure()) {
+                        Integer[] numArgs = ((CFunction)tree.getData()).getFunction().numArgs();
                         if (!Arrays.asList(numArgs).contains(Integer.MAX_VALUE) && !Arrays.asList(numArgs).contains(tree.getChildren().size())) {
                             throw new ConfigCompileException("Incorrect number of arguments passed to " + tree.getData().val(), tree.getData().getTarget());
                         }
@@ -1046,11 +967,31 @@ public class MethodScriptCompiler {
         }
         
         optimize(tree);
+        link(tree);
         parents.pop();
         tree = parents.pop();
         return tree;
     }
     
+    /**
+     * Binds every function node in the tree to the function it calls, so that
+     * the interpreter doesn't need to look each one up during execution. This
+     * must happen after optimization, since optimization may replace nodes.
+     * Procedures can't be bound, since they aren't defined until runtime.
+     * @param tree
+     * @throws ConfigCompileException 
+     */
+    private static void link(GenericTreeNode<Construct> tree) throws ConfigCompileException{
+        if(tree.data instanceof CIdentifier){
+            link(((CIdentifier)tree.data).contained());
+        } else if(tree.data instanceof CFunction && !((CFunction)tree.data).isProcedure()){
+            ((CFunction)tree.data).getFunction();
+        }
+        for(GenericTreeNode<Construct> child : tree.getChildren()){
+            link(child);
+        }
+    }
+    
     /**
      * Recurses down into the tree, attempting to optimize where possible. A few things
      * have strong coupling, for information on these items, see the documentation included
@@ -1075,7 +1016,7 @@ public class MethodScriptCompiler {
             for(int i = 0; i < tree.getChildren().size(); i++){
                 GenericTreeNode<Construct> node = tree.getChildAt(i);
                 if(node.data.val().equals("__autoconcat__")){
-                    Compiler.__autoconcat__ func = (Compiler.__autoconcat__)FunctionList.getFunction(node.data);
+                    Compiler.__autoconcat__ func = (Compiler.__autoconcat__)((CFunction)node.data).getFunction();
                     GenericTreeNode<Construct> tempNode = func.optimizeSpecial(node.data.getTarget(), node.children, false);
                     tree.data = tempNode.data;
                     tree.children = tempNode.children;
@@ -1104,7 +1045,7 @@ public class MethodScriptCompiler {
         CFunction cFunction = (CFunction)tree.data;
         Function func;
         try{
-            func = (Function)FunctionList.getFunction(cFunction);
+            func = cFunction.getFunction();
         } catch(ConfigCompileException e){
             //It's a proc. We can't optimize those yet.
             return;
@@ -44,7 +44,15 @@ public class Prefs {
         PROFILING_FILE("profiling-file"),
         SHOW_SPLASH_SCREEN("show-splash-screen"),
         USE_COLORS("use-colors"),
-        HALT_ON_FAILURE("halt-on-failure");
+        HALT_ON_FAILURE("halt-on-failure"),
+        PERSISTANCE_BACKEND("persistance-backend"),
+        ASYNC_EXECUTION("async-execution"),
+        ASYNC_THREADS("async-threads"),
+        COMPILE_CACHE("compile-cache"),
+        INCREMENTAL_RELOAD("incremental-reload"),
+        INCLUDE_CACHE_SIZE("include-cache-size"),
+        EVAL_CACHE_SIZE("eval-cache-size"),
+        SCHEDULER_TICK_BUDGET("scheduler-tick-budget");
         String name;
         private PNames(String name){
             this.name = name;
@@ -77,6 +85,29 @@ public class Prefs {
         a.add(new Preference(PNames.SHOW_SPLASH_SCREEN.config(), "true", Preferences.Type.BOOLEAN, "Whether or not to show the splash screen at server startup"));
         a.add(new Preference(PNames.USE_COLORS.config(), (TermColors.SYSTEM == TermColors.SYS.WINDOWS ? "false" : "true"), Preferences.Type.BOOLEAN, "Whether or not to use console colors. If this is a Windows machine, defaults to false, however, it can be toggled manually, and will then respect your setting."));
         a.add(new Preference(PNames.HALT_ON_FAILURE.config(), "false", Preferences.Type.BOOLEAN, "Whether or not to halt compilation of pure mscript files if a compilation failure occurs in any one of the files."));
+        a.add(new Preference(PNames.PERSISTANCE_BACKEND.config(), "serialized", Preferences.Type.STRING, "How data stored with store_value is saved. \"serialized\" rewrites the whole database every time a value is stored,"
+                + " which gets slow as the database grows. \"journaled\" appends each change to a journal in the background, and only rewrites the whole database"
+                + " occasionally, so storing values is cheap no matter how big the database is. Both use the same persistance.ser file, so you may switch between"
+                + " them at any time (with the server stopped)."));
+        a.add(new Preference(PNames.ASYNC_EXECUTION.config(), "false", Preferences.Type.BOOLEAN, "If true, aliases that use functions which can safely run off of the main server thread"
+                + " (such as the persistance functions) are run on a separate thread, and the functions they call that must run on the main thread are sent back to it."
+                + " This keeps slow functions from lagging the server, but the alias may take a tick or two longer to finish than it otherwise would."));
+        a.add(new Preference(PNames.ASYNC_THREADS.config(), "2", Preferences.Type.INT, "The number of threads to run async aliases on, if async-execution is enabled."));
+        a.add(new Preference(PNames.COMPILE_CACHE.config(), "true", Preferences.Type.BOOLEAN, "If true, the compiled form of each script file is saved in the compile-cache folder,"
+                + " and files that haven't changed since they were last compiled are loaded from there instead of being compiled again, which makes reloading faster."
+                + " If you suspect the cache is causing problems, set this to false, or simply delete the folder."));
+        a.add(new Preference(PNames.INCREMENTAL_RELOAD.config(), "false", Preferences.Type.BOOLEAN, "If true, /reloadaliases only reloads the files that have changed. Aliases from"
+                + " unchanged files are kept as they are, and ms files are only run again if they (or a file they include) changed, in which case the events they bound and the"
+                + " tasks they scheduled are removed first. Globals are not cleared. If an auto_include.ms file changed, everything is reloaded. Use /reloadaliases -f to force"
+                + " a full reload."));
+        a.add(new Preference(PNames.INCLUDE_CACHE_SIZE.config(), "200", Preferences.Type.INT, "The maximum number of included files to keep compiled in memory. If more files than"
+                + " this are included, the ones that haven't been used for the longest are dropped, and compiled again the next time they are included."));
+        a.add(new Preference(PNames.EVAL_CACHE_SIZE.config(), "100", Preferences.Type.INT, "The maximum number of distinct pieces of code passed to eval() to keep compiled"
+                + " in memory, so eval'ing the same code again only has to run it. The ones that haven't been used for the longest are dropped first. Set to 0 to compile"
+                + " the code every time."));
+        a.add(new Preference(PNames.SCHEDULER_TICK_BUDGET.config(), "5", Preferences.Type.INT, "The number of ms each server tick may spend running the tasks scheduled"
+                + " with set_interval and set_timeout. Tasks that come due once this is used up wait for the next tick, so lots of tasks coming due at once are"
+                + " spread out over a few ticks. At least one task is run each tick regardless."));
         prefs = new Preferences("CommandHelper", Static.getLogger(), a);
         prefs.init(f);
     }
@@ -148,4 +179,36 @@ public class Prefs {
     public static Boolean HaltOnFailure() {
         return (Boolean)pref(PNames.HALT_ON_FAILURE);
     }
+    
+    public static String PersistanceBackend() {
+        return (String)pref(PNames.PERSISTANCE_BACKEND);
+    }
+    
+    public static Boolean AsyncExecution() {
+        return (Boolean)pref(PNames.ASYNC_EXECUTION);
+    }
+    
+    public static Integer AsyncThreads() {
+        return (Integer)pref(PNames.ASYNC_THREADS);
+    }
+    
+    public static Boolean CompileCache() {
+        return (Boolean)pref(PNames.COMPILE_CACHE);
+    }
+    
+    public static Boolean IncrementalReload() {
+        return (Boolean)pref(PNames.INCREMENTAL_RELOAD);
+    }
+    
+    public static Integer IncludeCacheSize() {
+        return (Integer)pref(PNames.INCLUDE_CACHE_SIZE);
+    }
+    
+    public static Integer EvalCacheSize() {
+        return (Integer)pref(PNames.EVAL_CACHE_SIZE);
+    }
+    
+    public static Integer SchedulerTickBudget() {
+        return (Integer)pref(PNames.SCHEDULER_TICK_BUDGET);
+    }
 }
@@ -57,32 +57,37 @@ public class Procedure implements Cloneable {
         return execute(list, env);
     }
     public Construct execute(List<Construct> args, Env env){
-        env.SetVarList(new IVariableList());
-        CArray array = new CArray(Target.UNKNOWN);        
-        for(String key : originals.keySet()){
-            Construct c = originals.get(key);
-            env.GetVarList().set(new IVariable(key, c, Target.UNKNOWN));
-            array.push(c);
-        }
-        GenericTree<Construct> root = new GenericTree<Construct>();
-        root.setRoot(tree);
-        Script fakeScript = Script.GenerateScript(tree, env.GetLabel());//new Script(null, null);        
-        for(int i = 0; i < args.size(); i++){
-            Construct c = args.get(i);
-            array.set(i, c);
-            if(varIndex.size() > i){
-                String varname = varIndex.get(i).getName();
-                env.GetVarList().set(new IVariable(varname, c, c.getTarget()));
+        Profiler.Frame frame = Profiler.Start();
+        try {
+            env.SetVarList(new IVariableList());
+            CArray array = new CArray(Target.UNKNOWN);        
+            for(String key : originals.keySet()){
+                Construct c = originals.get(key);
+                env.GetVarList().set(new IVariable(key, c, Target.UNKNOWN));
+                array.push(c);
             }
-        }
-        env.GetVarList().set(new IVariable("@arguments", array, Target.UNKNOWN));
+            GenericTree<Construct> root = new GenericTree<Construct>();
+            root.setRoot(tree);
+            Script fakeScript = Script.GenerateScript(tree, env.GetLabel());//new Script(null, null);        
+            for(int i = 0; i < args.size(); i++){
+                Construct c = args.get(i);
+                array.set(i, c);
+                if(varIndex.size() > i){
+                    String varname = varIndex.get(i).getName();
+                    env.GetVarList().set(new IVariable(varname, c, c.getTarget()));
+                }
+            }
+            env.GetVarList().set(new IVariable("@arguments", array, Target.UNKNOWN));
         
-        try{
-            fakeScript.eval(tree, env);
-        } catch(FunctionReturnException e){
-            return e.getReturn();
+            try{
+                fakeScript.eval(tree, env);
+            } catch(FunctionReturnException e){
+                return e.getReturn();
+            }
+            return new CVoid(Target.UNKNOWN);
+        } finally {
+            Profiler.Stop(frame, Profiler.Kind.PROCEDURE, name);
         }
-        return new CVoid(Target.UNKNOWN);
     }
     
     @Override
@@ -0,0 +1,265 @@
+package com.laytonsmith.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A low overhead profiler, for finding out which scripts are eating up the server's time.
+ * While it's running, it counts the calls to each function, procedure, alias and bound
+ * event, by name, along with the total and self time spent in them. The self time is the
+ * total time less the time spent in the profiled things it called, so an alias that spends
+ * most of its time in one slow procedure has a high total time, but the procedure has the
+ * high self time. Each entry also keeps a histogram of how long the individual calls took.
+ * <p>
+ * While the profiler is off, a call costs one volatile read. The counters are atomics in
+ * concurrent maps, so the async workers can record into them without any locking.
+ * @author Layton
+ */
+public class Profiler {
+
+    public static enum Kind {
+
+        FUNCTION("function"),
+        PROCEDURE("procedure"),
+        ALIAS("alias"),
+        EVENT("event");
+        private final String name;
+
+        private Kind(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    /**
+     * Bucket i of the histograms counts the calls that took less than 2^i microseconds,
+     * (and at least 2^(i-1)). The last bucket counts everything longer.
+     */
+    public static final int BUCKETS = 24;
+
+    /**
+     * The counters for one function, procedure, alias or event.
+     */
+    public static class Stat {
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong self = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        private void record(long elapsed, long selfTime) {
+            calls.incrementAndGet();
+            total.addAndGet(elapsed);
+            self.addAndGet(selfTime);
+            long micros = elapsed / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        /**
+         * The total time spent in this, in ns.
+         * @return
+         */
+        public long getTotal() {
+            return total.get();
+        }
+
+        /**
+         * The time spent in this, not counting the profiled things it called, in ns.
+         * @return
+         */
+        public long getSelf() {
+            return self.get();
+        }
+
+        /**
+         * Returns the number of calls that landed in the specified histogram bucket.
+         * @param bucket
+         * @return
+         */
+        public long getBucket(int bucket) {
+            return histogram.get(bucket);
+        }
+    }
+
+    /**
+     * A call that is being timed. Frames are only ever used by the thread that started
+     * them.
+     */
+    public static class Frame {
+
+        private final Frame parent;
+        private final long start;
+        private long children = 0;
+
+        private Frame(Frame parent, long start) {
+            this.parent = parent;
+            this.start = start;
+        }
+    }
+    private static volatile boolean enabled = false;
+    private static volatile long resetAt = System.currentTimeMillis();
+    private static final ThreadLocal<Frame> current = new ThreadLocal<Frame>();
+    private static final Map<Kind, ConcurrentHashMap<String, Stat>> stats = new EnumMap<Kind, ConcurrentHashMap<String, Stat>>(Kind.class);
+
+    static {
+        for (Kind k : Kind.values()) {
+            stats.put(k, new ConcurrentHashMap<String, Stat>());
+        }
+    }
+
+    private Profiler() {
+    }
+
+    public static boolean Enabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns the profiler on or off. The counts so far are kept either way.
+     * @param on
+     */
+    public static void SetEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Throws away everything recorded so far.
+     */
+    public static void Reset() {
+        for (ConcurrentHashMap<String, Stat> m : stats.values()) {
+            m.clear();
+        }
+        resetAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts timing a call. If the profiler is off, this returns null, which Stop then
+     * ignores, so calls should be wrapped like this:
+     * <pre>
+     * Profiler.Frame frame = Profiler.Start();
+     * try {
+     *     ...
+     * } finally {
+     *     Profiler.Stop(frame, Profiler.Kind.FUNCTION, name);
+     * }
+     * </pre>
+     * @return
+     */
+    public static Frame Start() {
+        if (!enabled) {
+            return null;
+        }
+        Frame f = new Frame(current.get(), System.nanoTime());
+        current.set(f);
+        return f;
+    }
+
+    /**
+     * Stops timing the call, and records it under the specified name.
+     * @param f The frame returned by Start
+     * @param kind
+     * @param name
+     */
+    public static void Stop(Frame f, Kind kind, String name) {
+        if (f == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - f.start;
+        current.set(f.parent);
+        if (f.parent != null) {
+            f.parent.children += elapsed;
+        }
+        GetStat(kind, name).record(elapsed, elapsed - f.children);
+    }
+
+    private static Stat GetStat(Kind kind, String name) {
+        ConcurrentHashMap<String, Stat> m = stats.get(kind);
+        Stat s = m.get(name);
+        if (s == null) {
+            s = new Stat();
+            Stat existing = m.putIfAbsent(name, s);
+            if (existing != null) {
+                s = existing;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns what has been recorded for the specified kind of call, with the entries that
+     * took the most self time first.
+     * @param kind
+     * @return
+     */
+    public static List<Map.Entry<String, Stat>> GetStats(Kind kind) {
+        List<Map.Entry<String, Stat>> list = new ArrayList<Map.Entry<String, Stat>>(stats.get(kind).entrySet());
+        Collections.sort(list, new Comparator<Map.Entry<String, Stat>>() {
+
+            public int compare(Map.Entry<String, Stat> o1, Map.Entry<String, Stat> o2) {
+                long a = o1.getValue().getSelf();
+                long b = o2.getValue().getSelf();
+                return a > b ? -1 : (a == b ? 0 : 1);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Returns a human readable report of the top entries of each kind.
+     * @param limit The most entries of each kind to include
+     * @return
+     */
+    public static String Report(int limit) {
+        StringBuilder b = new StringBuilder();
+        b.append("Profile at ").append(new Date()).append(", covering the last ")
+                .append((System.currentTimeMillis() - resetAt) / 1000).append(" s")
+                .append(enabled ? "" : " (the profiler is off)").append("\n");
+        for (Kind kind : Kind.values()) {
+            List<Map.Entry<String, Stat>> list = GetStats(kind);
+            if (list.isEmpty()) {
+                continue;
+            }
+            b.append(String.format("%-40s %10s %12s %12s %10s  %s\n", kind, "calls", "total ms", "self ms", "avg us", "histogram"));
+            for (int i = 0; i < list.size() && i < limit; i++) {
+                Stat s = list.get(i).getValue();
+                long calls = s.getCalls();
+                b.append(String.format("%-40s %10d %12.2f %12.2f %10.1f  ", list.get(i).getKey(), calls,
+                        s.getTotal() / 1000000.0, s.getSelf() / 1000000.0, calls == 0 ? 0 : s.getTotal() / 1000.0 / calls));
+                for (int j = 0; j < BUCKETS; j++) {
+                    long count = s.getBucket(j);
+                    if (count > 0) {
+                        b.append(j == BUCKETS - 1 ? ">=" : "<").append(1L << (j == BUCKETS - 1 ? j - 1 : j)).append("us:").append(count).append(" ");
+                    }
+                }
+                b.append("\n");
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * Appends the report to the profiling log file.
+     * @param limit The most entries of each kind to include
+     * @throws IOException
+     */
+    public static void Dump(int limit) throws IOException {
+        Static.QuickAppend(Static.profilingLogFile(), Report(limit));
+    }
+}
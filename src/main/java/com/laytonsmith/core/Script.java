@@ -11,11 +11,12 @@ import com.laytonsmith.core.constructs.Token.TType;
 import com.laytonsmith.core.constructs.*;
 import com.laytonsmith.core.exceptions.*;
 import com.laytonsmith.core.functions.DataHandling.assign;
+import com.laytonsmith.core.functions.DataHandling.include;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import com.laytonsmith.core.functions.Function;
-import com.laytonsmith.core.functions.FunctionList;
 import com.sk89q.wepif.PermissionsResolverManager;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * A script is a section of code that has been preprocessed and split into separate 
@@ -42,8 +43,28 @@ public class Script {
     private Map<String, Variable> left_vars;
     boolean hasBeenCompiled = false;
     boolean compilerError = false;
+    /**
+     * True if this script's signature clashes with another script's. This is kept apart
+     * from compilerError, because it depends on the other scripts loaded with it, so it
+     * is worked out again each reload, while the script itself may be reused.
+     */
+    boolean ambiguous = false;
     private String label;
-    private Env CurrentEnv;
+    /**
+     * True if any function in the script declares runAsync() to be true, in
+     * which case it is worth running on a worker thread. include doesn't count,
+     * since the included code is cached after it's first loaded.
+     */
+    private boolean usesAsync = false;
+    /**
+     * The $variables used in cright, found the first time the script is run, so
+     * later runs don't have to walk the whole tree to find them.
+     */
+    private volatile List<Variable> dollarVars;
+    /**
+     * The name this alias is recorded under by the profiler.
+     */
+    private String profileName;
 
     @Override
     public String toString() {
@@ -51,16 +72,30 @@ public class Script {
         for (Token t : left) {
             b.append(t.val()).append(" ");
         }
-        b.append("compiled: ").append(hasBeenCompiled).append("; errors? ").append(compilerError);
+        b.append("compiled: ").append(hasBeenCompiled).append("; errors? ").append(uncompilable());
         return b.toString();
     }
 
-    private Procedure getProc(String name) {
-        return CurrentEnv.GetProcs().get(name);
+    /**
+     * Returns the signature of the alias, which the profiler records it under.
+     * @return 
+     */
+    private String getProfileName(){
+        if(profileName == null){
+            StringBuilder b = new StringBuilder();
+            for (Token t : left) {
+                if(b.length() > 0){
+                    b.append(" ");
+                }
+                b.append(t.val());
+            }
+            profileName = b.toString();
+        }
+        return profileName;
     }
-    
-    public Env getCurrentEnv(){
-        return CurrentEnv;
+
+    private Procedure getProc(String name, Env env) {
+        return env.GetProc(name);
     }
     
     public String getLabel(){
@@ -97,15 +132,14 @@ public class Script {
     }
 
     public boolean uncompilable() {
-        return compilerError;
+        return compilerError || ambiguous;
     }
 
     public void run(final List<Variable> vars, Env myEnv, final MethodScriptComplete done) {
         //Some things, such as the label are determined at compile time
-        this.CurrentEnv = myEnv;
-        this.CurrentEnv.SetLabel(this.label);
+        myEnv.SetLabel(this.label);
         MCCommandSender p = myEnv.GetCommandSender();
-        if (!hasBeenCompiled || compilerError) {
+        if (!hasBeenCompiled || uncompilable()) {
             Target target = Target.UNKNOWN;
             if (left.size() >= 1) {
                 try{
@@ -119,9 +153,9 @@ public class Script {
                     null, target);
         }
         if (p instanceof MCPlayer) {
-            if (CurrentEnv.GetLabel() != null) {
+            if (myEnv.GetLabel() != null) {
                 PermissionsResolverManager perms = Static.getPermissionsResolverManager();
-                String[] groups = CurrentEnv.GetLabel().substring(1).split("/");
+                String[] groups = myEnv.GetLabel().substring(1).split("/");
                 for (String group : groups) {
                     if (group.startsWith("-") && perms.inGroup(((MCPlayer)p).getName(), group.substring(1))) {
                         //negative permission
@@ -135,58 +169,113 @@ public class Script {
             }
         }
 
-        try {
+        if (usesAsync && !AsyncExecutor.OnWorker() && AsyncExecutor.Enabled()) {
+            final Env env = myEnv;
+            final MethodScriptComplete mainDone = AsyncExecutor.OnMainThread(done);
+            AsyncExecutor.RunScript(new Runnable() {
+
+                public void run() {
+                    try {
+                        execute(vars, env, mainDone);
+                    } catch (final ConfigRuntimeException ex) {
+                        if (ex.getEnv() == null) {
+                            ex.setEnv(env);
+                        }
+                        AsyncExecutor.RunOnMain(new Runnable() {
+
+                            public void run() {
+                                ConfigRuntimeException.React(ex);
+                            }
+                        });
+                    }
+                }
+            });
+        } else {
+            execute(vars, myEnv, done);
+        }
+    }
+
+    /**
+     * Returns the $variables used in the compiled trees. The trees don't change
+     * once they're compiled, so this is only worked out once.
+     * @return 
+     */
+    private List<Variable> getDollarVars(){
+        List<Variable> found = dollarVars;
+        if(found == null){
+            found = new ArrayList<Variable>();
             for (GenericTreeNode<Construct> rootNode : cright) {
                 GenericTree<Construct> tree = new GenericTree<Construct>();
                 tree.setRoot(rootNode);
                 for (GenericTreeNode<Construct> tempNode : tree.build(GenericTreeTraversalOrderEnum.PRE_ORDER)) {
                     if (tempNode.data instanceof Variable) {
-                        if(left_vars == null){
-                            throw new ConfigRuntimeException("$variables may not be used in this context. Only @variables may be.", null, tempNode.data.getTarget());
-                        }
-                        ((Variable) tempNode.data).setVal(
-                                Static.resolveConstruct(
-                                Static.resolveDollarVar(left_vars.get(((Variable) tempNode.data).getName()), vars).toString(), tempNode.data.getTarget()));
+                        found.add((Variable) tempNode.data);
                     }
                 }
-                
-                MethodScriptCompiler.registerAutoIncludes(CurrentEnv, this);
-                MethodScriptCompiler.execute(tree.getRoot(), CurrentEnv, done, this);
-            }
-        } catch (ConfigRuntimeException ex) {
-            //We don't know how to handle this really, so let's pass it up the chain.
-            throw ex;
-        } catch (CancelCommandException e) {
-            //p.sendMessage(e.getMessage());
-            //The message in the exception is actually empty
-        } catch (LoopBreakException e) {            
-            if(p != null){
-                p.sendMessage("The break() function must be used inside a for() or foreach() loop");
-            }
-            System.out.println("The break() function must be used inside a for() or foreach() loop");
-        } catch (LoopContinueException e) {
-            if(p != null){
-                p.sendMessage("The continue() function must be used inside a for() or foreach() loop");
-            }
-            System.out.println("The continue() function must be used inside a for() or foreach() loop");
-        } catch (FunctionReturnException e) {
-            if(myEnv.GetEvent() != null){
-                //Oh, we're running in an event handler. Those know how to catch it too.
-                throw e;
-            }
-            if(p != null){
-                p.sendMessage("The return() function must be used inside a procedure.");
-            }
-            System.out.println("The return() function must be used inside a procedure.");
-        } catch (Throwable t) {
-            System.out.println("An unexpected exception occured during the execution of a script.");
-            t.printStackTrace();
-            if(p != null){
-                p.sendMessage("An unexpected exception occured during the execution of your script. Please check the console for more information.");
             }
+            dollarVars = found;
         }
-        if (done != null) {
-            done.done(null);
+        return found;
+    }
+
+    private void execute(List<Variable> vars, Env myEnv, MethodScriptComplete done) {
+        //Scripts made by GenerateScript aren't aliases, (event handlers and the like are
+        //profiled under their own names by whatever runs them) so they aren't recorded here
+        Profiler.Frame frame = left == null ? null : Profiler.Start();
+        try {
+            MCCommandSender p = myEnv.GetCommandSender();
+            try {
+                //The values of the $variables are kept in the environment, rather than in
+                //the tree, since the same tree may be running for several commands at once
+                Map<String, String> dollarValues = new HashMap<String, String>();
+                for (Variable v : getDollarVars()) {
+                    if(left_vars == null){
+                        throw new ConfigRuntimeException("$variables may not be used in this context. Only @variables may be.", null, v.getTarget());
+                    }
+                    dollarValues.put(v.getName(), Static.resolveDollarVar(left_vars.get(v.getName()), vars).toString());
+                }
+                myEnv.SetDollarVars(dollarValues);
+                for (GenericTreeNode<Construct> rootNode : cright) {
+                    MethodScriptCompiler.registerAutoIncludes(myEnv, this);
+                    MethodScriptCompiler.execute(rootNode, myEnv, done, this);
+                }
+            } catch (ConfigRuntimeException ex) {
+                //We don't know how to handle this really, so let's pass it up the chain.
+                throw ex;
+            } catch (CancelCommandException e) {
+                //p.sendMessage(e.getMessage());
+                //The message in the exception is actually empty
+            } catch (LoopBreakException e) {            
+                if(p != null){
+                    p.sendMessage("The break() function must be used inside a for() or foreach() loop");
+                }
+                System.out.println("The break() function must be used inside a for() or foreach() loop");
+            } catch (LoopContinueException e) {
+                if(p != null){
+                    p.sendMessage("The continue() function must be used inside a for() or foreach() loop");
+                }
+                System.out.println("The continue() function must be used inside a for() or foreach() loop");
+            } catch (FunctionReturnException e) {
+                if(myEnv.GetEvent() != null){
+                    //Oh, we're running in an event handler. Those know how to catch it too.
+                    throw e;
+                }
+                if(p != null){
+                    p.sendMessage("The return() function must be used inside a procedure.");
+                }
+                System.out.println("The return() function must be used inside a procedure.");
+            } catch (Throwable t) {
+                System.out.println("An unexpected exception occured during the execution of a script.");
+                t.printStackTrace();
+                if(p != null){
+                    p.sendMessage("An unexpected exception occured during the execution of your script. Please check the console for more information.");
+                }
+            }
+            if (done != null) {
+                done.done(null);
+            }
+        } finally {
+            Profiler.Stop(frame, Profiler.Kind.ALIAS, getProfileName());
         }
     }
     
@@ -200,20 +289,21 @@ public class Script {
         Construct ret = eval(c, env);
         if(ret instanceof IVariable){
             IVariable cur = (IVariable)ret;
-            return env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+            return env.GetVarList().get(cur).ival();
         }
         return ret;
     }
 
-    public Construct eval(GenericTreeNode<Construct> c, final Env env) throws CancelCommandException {
+    public Construct eval(final GenericTreeNode<Construct> c, final Env env) throws CancelCommandException {
         final Construct m = c.getData();
-        CurrentEnv = env;
-        CurrentEnv.SetLabel(this.label);
+        env.SetLabel(this.label);
         if (m.getCType() == ConstructType.FUNCTION) {
                 env.SetScript(this);
-                if (m.val().matches("^_[^_].*")) {
+                CFunction cfunc = (CFunction)m;
+                if (cfunc.isProcedure()) {
                     //Not really a function, so we can't put it in Function.
-                    Procedure p = getProc(m.val());
+                    //Procedures are defined at runtime, so they can't be bound by the compiler.
+                    Procedure p = getProc(m.val(), env);
                     if (p == null) {
                         throw new ConfigRuntimeException("Unknown procedure \"" + m.val() + "\"", ExceptionType.InvalidProcedureException, m.getTarget());
                     }
@@ -225,66 +315,77 @@ public class Script {
                 }
                 final Function f;
                 try{
-                    f = (Function)FunctionList.getFunction(m);
+                    //This is bound during compilation, so normally this is just a field access
+                    f = cfunc.getFunction();
                 } catch(ConfigCompileException e){
                     //Turn it into a config runtime exception. This shouldn't ever happen though.
                     throw new ConfigRuntimeException("Unable to find function " + m.val(), m.getTarget());
                 }
-                //We have special handling for loop and other control flow functions
-                if(f instanceof assign){
-                    if(c.getChildAt(0).getData() instanceof CFunction){
-                        CFunction test = (CFunction)c.getChildAt(0).getData();
-                        if(test.val().equals("array_get")){
-                            env.SetFlag("array_get_alt_mode", true);
-                            Construct arrayAndIndex = eval(c.getChildAt(0), env);
-                            env.ClearFlag("array_get_alt_mode");
-                            return ((assign)f).array_assign(m.getTarget(), env, arrayAndIndex, eval(c.getChildAt(1), env));
+                boolean arrayAssign = f instanceof assign && c.getChildAt(0).getData() instanceof CFunction
+                        && c.getChildAt(0).getData().val().equals("array_get");
+                if(f.useSpecialExec() && AsyncExecutor.MustRunOnMain(f)){
+                    //Control flow that must run on the main thread works with the tree rather than
+                    //with the values of its arguments, so on a worker, the whole call is run on the
+                    //main thread, and is profiled there instead.
+                    return AsyncExecutor.OnMainThread(new Callable<Construct>() {
+
+                        public Construct call() throws Exception {
+                            return eval(c, env);
                         }
-                    }
+                    }, m.getTarget());
                 }
+                Profiler.Frame frame = Profiler.Start();
+                try {
+                    //We have special handling for loop and other control flow functions
+                    if(arrayAssign){
+                        env.SetFlag("array_get_alt_mode", true);
+                        Construct arrayAndIndex = eval(c.getChildAt(0), env);
+                        env.ClearFlag("array_get_alt_mode");
+                        return ((assign)f).array_assign(m.getTarget(), env, arrayAndIndex, eval(c.getChildAt(1), env));
+                    }
                 
-                if(f.useSpecialExec()){
-                    return f.execs(m.getTarget(), env, this, c.getChildren().toArray(new GenericTreeNode[]{}));
-                }
-
-                ArrayList<Construct> args = new ArrayList<Construct>();
-                for (GenericTreeNode<Construct> c2 : c.getChildren()) {
-                    args.add(eval(c2, env));
-                }
-                if (f.isRestricted()) {
-                    boolean perm = Static.hasCHPermission(f.getName(), env);
-                    if (!perm) {
-                        throw new ConfigRuntimeException("You do not have permission to use the " + f.getName() + " function.",
-                                ExceptionType.InsufficientPermissionException, m.getTarget());
+                    List<GenericTreeNode<Construct>> children = c.getChildren();
+                    int size = children.size();
+                    if(f.useSpecialExec()){
+                        return f.execs(m.getTarget(), env, this, children.toArray(new GenericTreeNode[size]));
                     }
-                }
-                Object[] a = args.toArray();
-                Construct[] ca = new Construct[a.length];
-                for (int i = 0; i < a.length; i++) {
-                    ca[i] = (Construct) a[i];
-                    //CArray, CBoolean, CDouble, CInt, CNull, CString, CVoid, CEntry, CLabel (only to sconcat).
-                    if (!(ca[i] instanceof CArray || ca[i] instanceof CBoolean || ca[i] instanceof CDouble
-                            || ca[i] instanceof CInt || ca[i] instanceof CNull
-                            || ca[i] instanceof CString || ca[i] instanceof CVoid 
-                            || ca[i] instanceof IVariable || ca[i] instanceof CEntry || ca[i] instanceof CLabel)
-                            && (!f.getName().equals("__autoconcat__") && (ca[i] instanceof CLabel))) {
-                        throw new ConfigRuntimeException("Invalid Construct (" 
-                                + ca[i].getClass() + ") being passed as an argument to a function (" 
-                                + f.getName() + ")", null, m.getTarget());
+
+                    //Fill the arguments in directly. eval only ever returns atomic values, IVariables,
+                    //or the constructs the compiler left in the tree (CEntry, CLabel, CSlice, etc), so
+                    //there is no need to re-check the type of each argument here.
+                    Construct[] ca = new Construct[size];
+                    for (int i = 0; i < size; i++) {
+                        ca[i] = eval(children.get(i), env);
                     }
-                    if(env.GetFlag("array_get_alt_mode") == Boolean.TRUE && i == 0){
-                        continue;
+                    if (f.isRestricted()) {
+                        boolean perm = Static.hasCHPermission(f.getName(), env);
+                        if (!perm) {
+                            throw new ConfigRuntimeException("You do not have permission to use the " + f.getName() + " function.",
+                                    ExceptionType.InsufficientPermissionException, m.getTarget());
+                        }
                     }
-                    if(f.preResolveVariables() && ca[i] instanceof IVariable){
-                        IVariable cur = (IVariable)ca[i];
-                        ca[i] = env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+                    if(f.preResolveVariables()){
+                        //In array_get_alt_mode, the first argument must stay a variable
+                        int start = env.GetFlag("array_get_alt_mode") == Boolean.TRUE ? 1 : 0;
+                        for (int i = start; i < size; i++) {
+                            if(ca[i] instanceof IVariable){
+                                IVariable cur = (IVariable)ca[i];
+                                ca[i] = env.GetVarList().get(cur).ival();
+                            }
+                        }
                     }
-                }
 
-                Construct ret = f.exec(m.getTarget(), env, ca);
-                return ret;
+                    Construct ret = AsyncExecutor.Exec(f, m.getTarget(), env, ca);
+                    return ret;
+                } finally {
+                    Profiler.Stop(frame, Profiler.Kind.FUNCTION, m.val());
+                }
 
         } else if (m.getCType() == ConstructType.VARIABLE) {
+            Map<String, String> dollarVars = env.GetDollarVars();
+            if(dollarVars != null && dollarVars.containsKey(((Variable) m).getName())){
+                return Static.resolveConstruct(dollarVars.get(((Variable) m).getName()), m.getTarget());
+            }
             return Static.resolveConstruct(m.val(), m.getTarget());
         } else {
             return m;
@@ -299,9 +400,7 @@ public class Script {
         }
         boolean case_sensitive = Prefs.CaseSensitive();
         String[] cmds = command.split(" ");
-        List<String> args = new ArrayList(Arrays.asList(cmds));
         boolean isAMatch = true;
-        StringBuilder lastVar = new StringBuilder();
         int lastJ = 0;
         try {
             for (int j = 0; j < cleft.size(); j++) {
@@ -310,7 +409,7 @@ public class Script {
                 }
                 lastJ = j;
                 Construct c = cleft.get(j);
-                String arg = args.get(j);
+                String arg = cmds[j];
                 if (c.getCType() != ConstructType.VARIABLE) {
                     if (case_sensitive && !c.val().equals(arg) || !case_sensitive && !c.val().equalsIgnoreCase(arg)) {
                         isAMatch = false;
@@ -320,7 +419,7 @@ public class Script {
                     //It's a variable. If it's optional, the rest of them are optional too, so as long as the size of
                     //args isn't greater than the size of cleft, it's a match
                     if (((Variable) c).isOptional()) {
-                        if (args.size() <= cleft.size()) {
+                        if (cmds.length <= cleft.size()) {
                             return true;
                         } else {
                             Construct fin = cleft.get(cleft.size() - 1);
@@ -333,20 +432,6 @@ public class Script {
                         }
                     }
                 }
-                if (j == cleft.size() - 1) {
-                    if (cleft.get(j).getCType() == ConstructType.VARIABLE) {
-                        Variable lv = (Variable) cleft.get(j);
-                        if (lv.isFinal()) {
-                            for (int a = j; a < args.size(); a++) {
-                                if (lastVar.length() == 0) {
-                                    lastVar.append(args.get(a));
-                                } else {
-                                    lastVar.append(" ").append(args.get(a));
-                                }
-                            }
-                        }
-                    }
-                }
             }
         } catch (IndexOutOfBoundsException e) {
             if (cleft.get(lastJ).getCType() != ConstructType.VARIABLE
@@ -369,29 +454,46 @@ public class Script {
         if (cleft.size() != cmds.length && !lastIsFinal) {
             isAMatch = false;
         }
-        ArrayList<Variable> vars = new ArrayList<Variable>();
-        Variable v = null;
-        for (int j = 0; j < cleft.size(); j++) {
-            try {
-                if (cleft.get(j).getCType() == ConstructType.VARIABLE) {
-                    if (((Variable) cleft.get(j)).getName().equals("$")) {
-                        v = new Variable(((Variable) cleft.get(j)).getName(),
-                                lastVar.toString(), Target.UNKNOWN);
-                    } else {
-                        v = new Variable(((Variable) cleft.get(j)).getName(),
-                                args.get(j), Target.UNKNOWN);
-                    }
-                }
-            } catch (IndexOutOfBoundsException e) {
-                v = new Variable(((Variable) cleft.get(j)).getName(),
-                        ((Variable) cleft.get(j)).getDefault(), Target.UNKNOWN);
-            }
-            if (v != null) {
-                vars.add(v);
-            }
-        }
         return isAMatch;
     }
+    
+    /**
+     * Returns the compiled signature, or null if it failed to compile.
+     * @return 
+     */
+    List<Construct> getCompiledLeft() {
+        return cleft;
+    }
+    
+    List<Token> getLeft() {
+        return left;
+    }
+    
+    Map<String, Variable> getLeftVars() {
+        return left_vars;
+    }
+    
+    List<GenericTreeNode<Construct>> getCompiledRight() {
+        return cright;
+    }
+    
+    /**
+     * Recreates a script that was successfully compiled before, from the parts
+     * that compile() would have produced. This is used by the CompileCache.
+     */
+    static Script Restore(String label, List<Token> left, Map<String, Variable> left_vars,
+            List<Construct> cleft, List<GenericTreeNode<Construct>> cright) {
+        Script s = new Script();
+        s.label = label;
+        s.left = left;
+        s.left_vars = left_vars;
+        s.cleft = cleft;
+        s.cright = cright;
+        s.hasBeenCompiled = true;
+        s.compilerError = false;
+        s.findAsync();
+        return s;
+    }
 
     public List<Variable> getVariables(String command) {
         String[] cmds = command.split(" ");
@@ -437,9 +539,39 @@ public class Script {
         }
         compilerError = false;
         hasBeenCompiled = true;
+        findAsync();
         return this;
     }
 
+    private void findAsync() {
+        usesAsync = false;
+        for (GenericTreeNode<Construct> root : cright) {
+            if (usesAsync(root)) {
+                usesAsync = true;
+                break;
+            }
+        }
+    }
+
+    private static boolean usesAsync(GenericTreeNode<Construct> node) {
+        if (node.getData() instanceof CFunction && !((CFunction) node.getData()).isProcedure()) {
+            try {
+                Function f = ((CFunction) node.getData()).getFunction();
+                if (f.runAsync() == Boolean.TRUE && !(f instanceof include)) {
+                    return true;
+                }
+            } catch (ConfigCompileException e) {
+                //Not a function we know about, so it can't be async
+            }
+        }
+        for (GenericTreeNode<Construct> child : node.getChildren()) {
+            if (usesAsync(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean verifyLeft() throws ConfigCompileException {
         boolean inside_opt_var = false;
         boolean after_no_def_opt_var = false;
@@ -653,12 +785,21 @@ public class Script {
         }
         right.add(temp);
         cright = new ArrayList<GenericTreeNode<Construct>>();
+        dollarVars = null;
         for (List<Token> l : right) {
             cright.add(MethodScriptCompiler.compile(l));
         }
     }
 
+    /**
+     * Checks this script's signature against the scripts loaded before it, marking both
+     * this script and the one it clashes with as ambiguous if they match. Any ambiguity
+     * found by a previous reload is cleared first, since the clashing script may be gone.
+     * @param scripts
+     * @throws ConfigCompileException 
+     */
     public void checkAmbiguous(List<Script> scripts) throws ConfigCompileException {
+        ambiguous = false;
         //for (int i = 0; i < scripts.size(); i++) {
         List<Construct> thisCommand = this.cleft;
         for (int j = 0; j < scripts.size(); j++) {
@@ -723,8 +864,8 @@ public class Script {
                 for (Construct c : thatCommand) {
                     commandThat += c.val() + " ";
                 }
-                scripts.get(j).compilerError = true;
-                this.compilerError = true;
+                scripts.get(j).ambiguous = true;
+                this.ambiguous = true;
                 throw new ConfigCompileException("The command " + commandThis.trim() + " is ambiguous because it "
                         + "matches the signature of " + commandThat.trim(), thisCommand.get(0).getTarget());
             }
@@ -154,6 +154,22 @@ public class Static {
         return false;
     }
 
+    /**
+     * Returns true if all of the constructs are CInts, false otherwise. When this is
+     * true, arithmetic on the arguments can be done entirely in longs, which is both
+     * faster and exact beyond 2^53, where doubles start to lose precision.
+     * @param c
+     * @return 
+     */
+    public static boolean allInts(Construct... c) {
+        for (int i = 0; i < c.length; i++) {
+            if (!(c[i] instanceof CInt)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Return true if any of the constructs are CStrings, false otherwise.
      * @param c
@@ -221,13 +237,30 @@ public class Static {
         return ac;
     }
 
+    /**
+     * Creates the persistance object for the database at the specified location,
+     * using whichever backend is selected in the preferences.
+     * @param database
+     * @return 
+     */
+    public static Persistance OpenPersistance(File database) {
+        String backend = Prefs.PersistanceBackend();
+        if ("journaled".equalsIgnoreCase(backend)) {
+            return new JournaledPersistance(database);
+        }
+        if (!"serialized".equalsIgnoreCase(backend)) {
+            getLogger().log(Level.WARNING, "Unknown persistance-backend \"{0}\", using serialized instead", backend);
+        }
+        return new SerializedPersistance(database);
+    }
+
     /**
      * Gets the persistance object for this plugin
      * @return
      * @throws NotInitializedYetException 
      */
-    public static SerializedPersistance getPersistance() throws NotInitializedYetException {
-        SerializedPersistance p = com.laytonsmith.commandhelper.CommandHelperPlugin.persist;
+    public static Persistance getPersistance() throws NotInitializedYetException {
+        Persistance p = com.laytonsmith.commandhelper.CommandHelperPlugin.persist;
         if (p == null) {
             throw new NotInitializedYetException("The persistance framework has not been initialized yet");
         }
@@ -0,0 +1,218 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.abstraction.StaticLayer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the tasks scheduled with set_interval and set_timeout. Rather than each task being
+ * its own server task, a single repeating task runs on the main thread every tick, and runs
+ * the tasks that are due, soonest first, until the tick's time budget (scheduler-tick-budget)
+ * is used up. Anything left over is still due, so it runs first next tick, and a few hundred
+ * intervals that come due together are spread over a few ticks, rather than all landing on
+ * one. At least one task is run each tick, so a budget that's too small can't starve them.
+ * <p>
+ * Tasks may instead opt in to the async lane, in which case they are handed to the
+ * AsyncExecutor workers when they come due, and any functions they call that must run on
+ * the main thread are passed back to it, as with any async script. This is only safe for
+ * closures that don't share arrays or variables with code running on the main thread. An
+ * async interval isn't started again while its last run is still going.
+ * @author Layton
+ */
+public class TaskScheduler {
+
+    /**
+     * How often the scheduler runs, in ms. This is one server tick.
+     */
+    private static final long TICK = 50;
+
+    private static class Task implements Comparable<Task> {
+
+        final int id;
+        final long period;
+        final boolean async;
+        final Runnable r;
+        final AtomicBoolean running = new AtomicBoolean(false);
+        long due;
+
+        Task(int id, long due, long period, boolean async, Runnable r) {
+            this.id = id;
+            this.due = due;
+            this.period = period;
+            this.async = async;
+            this.r = r;
+        }
+
+        public int compareTo(Task o) {
+            if (due != o.due) {
+                return due < o.due ? -1 : 1;
+            }
+            //Tasks that are due at the same time run in the order they were scheduled
+            return id < o.id ? -1 : (id == o.id ? 0 : 1);
+        }
+    }
+    private static final PriorityQueue<Task> queue = new PriorityQueue<Task>();
+    private static final Map<Integer, Task> tasks = new HashMap<Integer, Task>();
+    private static int nextId = 1;
+    private static int driver = -1;
+
+    private TaskScheduler() {
+    }
+
+    /**
+     * Reserves an id for a task that is about to be scheduled. Tasks that need to know
+     * their own id while they run should get it this way, and pass it to
+     * {@link #Schedule(int, long, long, boolean, Runnable)}, since once a task is
+     * scheduled, it may run before Schedule even returns.
+     * @return
+     */
+    public static synchronized int NewId() {
+        return nextId++;
+    }
+
+    /**
+     * Schedules a task. If period is greater than 0, the task is run again every period ms
+     * after it first runs, until it is cancelled, otherwise it is only run once.
+     * @param delay The number of ms before the task first runs
+     * @param period The number of ms between runs, or 0 to run only once
+     * @param async Whether to run the task on a worker thread rather than the main thread
+     * @param r
+     * @return The id of the task, which can be passed to Cancel
+     */
+    public static int Schedule(long delay, long period, boolean async, Runnable r) {
+        int id = NewId();
+        Schedule(id, delay, period, async, r);
+        return id;
+    }
+
+    /**
+     * Schedules a task under an id from {@link #NewId()}.
+     * @param id
+     * @param delay The number of ms before the task first runs
+     * @param period The number of ms between runs, or 0 to run only once
+     * @param async Whether to run the task on a worker thread rather than the main thread
+     * @param r
+     */
+    public static synchronized void Schedule(int id, long delay, long period, boolean async, Runnable r) {
+        Task task = new Task(id, System.currentTimeMillis() + Math.max(0, delay), period, async, r);
+        tasks.put(task.id, task);
+        queue.add(task);
+        if (driver == -1) {
+            driver = StaticLayer.SetFutureRepeater(TICK, TICK, new Runnable() {
+
+                public void run() {
+                    Tick();
+                }
+            });
+        }
+    }
+
+    /**
+     * Cancels the specified task. If the task is running right now, it finishes, but isn't
+     * run again. Unknown ids are ignored.
+     * @param id
+     */
+    public static synchronized void Cancel(int id) {
+        Task task = tasks.remove(id);
+        if (task != null) {
+            queue.remove(task);
+        }
+    }
+
+    /**
+     * Cancels all the tasks, and stops the scheduler until something else is scheduled.
+     */
+    public static synchronized void CancelAll() {
+        tasks.clear();
+        queue.clear();
+        stop();
+    }
+
+    /**
+     * Returns the number of tasks that are scheduled.
+     * @return
+     */
+    public static synchronized int Size() {
+        return tasks.size();
+    }
+
+    private static void stop() {
+        if (driver != -1) {
+            StaticLayer.ClearFutureRunnable(driver);
+            driver = -1;
+        }
+    }
+
+    /**
+     * Runs the tasks that are due, for as much of this tick as the budget allows. This is
+     * called by the scheduler every tick.
+     */
+    public static void Tick() {
+        Tick(System.currentTimeMillis(), Prefs.SchedulerTickBudget() * 1000000L);
+    }
+
+    static void Tick(long now, long budget) {
+        long start = System.nanoTime();
+        boolean ranAny = false;
+        while (true) {
+            Task task;
+            synchronized (TaskScheduler.class) {
+                task = queue.peek();
+                if (task == null || task.due > now || (ranAny && System.nanoTime() - start >= budget)) {
+                    if (tasks.isEmpty()) {
+                        stop();
+                    }
+                    return;
+                }
+                queue.poll();
+                if (task.period <= 0) {
+                    tasks.remove(task.id);
+                }
+            }
+            run(task);
+            ranAny = true;
+            if (task.period > 0) {
+                synchronized (TaskScheduler.class) {
+                    //Unless it cancelled itself while it ran
+                    if (tasks.get(task.id) == task) {
+                        task.due += task.period;
+                        if (task.due <= now) {
+                            //It's fallen behind, so skip the runs it missed
+                            task.due = now + task.period;
+                        }
+                        queue.add(task);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void run(final Task task) {
+        if (!task.async) {
+            try {
+                task.r.run();
+            } catch (RuntimeException e) {
+                Logger.getLogger(TaskScheduler.class.getName()).log(Level.SEVERE, null, e);
+            }
+            return;
+        }
+        if (!task.running.compareAndSet(false, true)) {
+            //The last run is still going
+            return;
+        }
+        AsyncExecutor.RunScript(new Runnable() {
+
+            public void run() {
+                try {
+                    task.r.run();
+                } finally {
+                    task.running.set(false);
+                }
+            }
+        });
+    }
+}
@@ -11,7 +11,9 @@ import com.laytonsmith.core.constructs.Token;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,7 +24,27 @@ import java.util.Map;
 public class UserManager {
     
     private static Map<String, UserManager> map = new HashMap<String, UserManager>();
-    private static Map<String, List<Token>> script_cache = new HashMap<String, List<Token>>();
+    /**
+     * The maximum number of players whose aliases are kept compiled at once.
+     */
+    private static final int MAX_COMPILED_USERS = 100;
+    /**
+     * The users whose aliases are currently compiled, least recently used first.
+     * When there are too many, the oldest one's scripts are thrown away, and will be
+     * recompiled the next time they are needed.
+     */
+    private static final Map<String, UserManager> compiled = new LinkedHashMap<String, UserManager>(16, 0.75f, true){
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserManager> eldest) {
+            if(size() > MAX_COMPILED_USERS){
+                eldest.getValue().scripts = null;
+                return true;
+            }
+            return false;
+        }
+        
+    };
     
     public static UserManager GetUserManager(String name){
         if(!map.containsKey(name)){
@@ -35,10 +57,22 @@ public class UserManager {
         if(map.containsKey(name)){
             map.remove(name);
         }
+        synchronized(compiled){
+            compiled.remove(name);
+        }
     }
     
     String name;
     String lastCommand;
+    /**
+     * This user's aliases, compiled, or null if they need to be (re)compiled.
+     */
+    private List<Script> scripts;
+    /**
+     * Bumped each time the aliases change, so a compile that was started before the
+     * change knows not to store its (now stale) scripts.
+     */
+    private int generation = 0;
     
     private UserManager(String name){
         this.name = name;
@@ -67,6 +101,7 @@ public class UserManager {
             nextValue = Math.max(thisX + 1, nextValue + 1);
         }
         persist.setValue(new String[]{"user", name, "aliases", nextValue.toString()}, alias);
+        invalidate();
         return nextValue;
     }
     
@@ -81,17 +116,21 @@ public class UserManager {
     private Script getAlias(String alias) throws ConfigCompileException{
         Env env = new Env();
         env.SetPlayer(Static.GetPlayer(name, Target.UNKNOWN));            
-        List<Token> tokens;
-        if(script_cache.containsKey(alias)){
-            tokens = script_cache.get(alias);
-        } else {
-            tokens = MethodScriptCompiler.lex(alias, new File("User Alias"));            
-        }
+        List<Token> tokens = MethodScriptCompiler.lex(alias, new File("User Alias"));
         return MethodScriptCompiler.preprocess(tokens, env).get(0);
     }
     
     public void delAlias(int id){
         Static.getPersistance().setValue(new String[]{"user", name, "aliases", Integer.toString(id)}, null);
+        invalidate();
+    }
+    
+    private void invalidate(){
+        synchronized(compiled){
+            scripts = null;
+            generation++;
+            compiled.remove(name);
+        }
     }
     
     public String getAllAliases(int page){
@@ -116,16 +155,40 @@ public class UserManager {
         return b.toString();
     }
     
+    /**
+     * Returns all of this user's aliases, compiled. The scripts are only compiled the
+     * first time they are needed, and are then reused until an alias is added or deleted,
+     * or the user logs out.
+     * @return 
+     */
     public List<Script> getAllScripts(){
-        List<Map.Entry<String, Object>> scripts = Static.getPersistance().getNamespaceValues(new String[]{"user", name, "aliases"});
+        int startedAt;
+        synchronized(compiled){
+            if(scripts != null){
+                //Mark it as recently used
+                compiled.get(name);
+                return scripts;
+            }
+            startedAt = generation;
+        }
+        List<Map.Entry<String, Object>> aliases = Static.getPersistance().getNamespaceValues(new String[]{"user", name, "aliases"});
         List<Script> list = new ArrayList<Script>();
-        for(Map.Entry<String, Object> entry : scripts){
+        for(Map.Entry<String, Object> entry : aliases){
             try{
-                list.add(getAlias((String)entry.getValue()));
+                list.add(getAlias((String)entry.getValue()).compile());
             } catch(ConfigCompileException e){
                 //Ignore this one
             }
         }
+        list = Collections.unmodifiableList(list);
+        synchronized(compiled){
+            //If the aliases changed while we were compiling, these are already out of
+            //date, so they can be used this once, but the next call compiles again
+            if(generation == startedAt){
+                scripts = list;
+                compiled.put(name, this);
+            }
+        }
         return list;
     }
     
@@ -8,19 +8,39 @@ import com.laytonsmith.core.Static;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import com.laytonsmith.core.natives.interfaces.ArrayAccess;
+import com.laytonsmith.core.natives.interfaces.Sequence;
 import java.util.*;
 
 /**
  *
  * @author layton
  */
-public class CArray extends Construct implements ArrayAccess{
+public class CArray extends Construct implements ArrayAccess, Sequence{
 
     private boolean associative_mode = false;
     private long next_index = 0;
     private List<Construct> array;
-    private SortedMap<String, Construct> associative_array;
+    private TreeMap<String, Construct> associative_array;
     private String mutVal;
+    /**
+     * The string form of the array is only built when it is needed. Any change
+     * to the array (or an array inside of it) marks it as dirty.
+     */
+    private boolean valueDirty = true;
+    /**
+     * In associative mode, the largest integer key in the array is tracked as keys
+     * are added, so that pushing doesn't have to scan all the keys. If the largest key
+     * is removed, the keys are rescanned the next time it's needed.
+     */
+    private int maxIntKey;
+    private boolean hasIntKey = false;
+    private boolean maxIntKeyStale = false;
+    /**
+     * Clones share their containers with the original until one of them is
+     * changed, at which point that array copies them. This is set on both arrays
+     * when a clone is made.
+     */
+    private boolean copyOnWrite = false;
     CArray parent = null;
     
     
@@ -45,19 +65,11 @@ public class CArray extends Construct implements ArrayAccess{
             if(items != null){
                 for(Construct item : items){
                     if(item instanceof CEntry){
-                        associative_array.put(normalizeConstruct(((CEntry)item).ckey), ((CEntry)item).construct);
+                        putAssociative(normalizeConstruct(((CEntry)item).ckey), ((CEntry)item).construct);
                     } else {
-                        int max = Integer.MIN_VALUE;            
-                        for (String key : associative_array.keySet()) {
-                            try{
-                                int i = Integer.parseInt(key);
-                                max = java.lang.Math.max(max, i);
-                            } catch(NumberFormatException e){}
-                        }
-                        if(max == Integer.MIN_VALUE){
-                            max = -1; //Special case, there are no integer indexes in here yet.
-                        }
-                        associative_array.put(Integer.toString(max + 1), item);
+                        //If there are no integer indexes in here yet, this starts at 0
+                        int max = hasMaxIntKey() ? maxIntKey : -1;
+                        putAssociative(Integer.toString(max + 1), item);
                         if(item instanceof CArray){
                             ((CArray)item).parent = this;
                         }
@@ -96,7 +108,20 @@ public class CArray extends Construct implements ArrayAccess{
         associative_mode = true;
     }
 
+    /**
+     * Marks the string value of this array, and all the arrays that contain it,
+     * as needing to be regenerated the next time it is requested.
+     */
     private void regenValue() {
+        CArray a = this;
+        //If an array is already dirty, so are its parents, so we can stop there.
+        while(a != null && !a.valueDirty){
+            a.valueDirty = true;
+            a = a.parent;
+        }
+    }
+    
+    private String getString() {
         StringBuilder b = new StringBuilder();
         b.append("{");
         if (!associative_mode) {
@@ -119,9 +144,22 @@ public class CArray extends Construct implements ArrayAccess{
             }
         }
         b.append("}");
-        mutVal = b.toString();
-        if(parent != null){
-            parent.regenValue();
+        return b.toString();
+    }
+
+    /**
+     * If this array's containers are shared with a clone, gives this array its
+     * own copy of them, so that it can be changed.
+     */
+    private void ensureWritable(){
+        if(copyOnWrite){
+            if(array != null){
+                array = new ArrayList<Construct>(array);
+            }
+            if(associative_array != null){
+                associative_array = new TreeMap<String, Construct>(associative_array);
+            }
+            copyOnWrite = false;
         }
     }
 
@@ -130,21 +168,16 @@ public class CArray extends Construct implements ArrayAccess{
      * @param c 
      */
     public void push(Construct c) {
+        ensureWritable();
         if (!associative_mode) {
             array.add(c);
             next_index++;
         } else {
-            int max = 0;            
-            for (String key : associative_array.keySet()) {
-                try{
-                    int i = Integer.parseInt(key);
-                    max = java.lang.Math.max(max, i);
-                } catch(NumberFormatException e){}
-            }
+            int max = hasMaxIntKey() ? java.lang.Math.max(0, maxIntKey) : 0;
             if(c instanceof CEntry){
-                associative_array.put(Integer.toString(max + 1), ((CEntry)c).construct());
+                putAssociative(Integer.toString(max + 1), ((CEntry)c).construct());
             } else {
-                associative_array.put(Integer.toString(max + 1), c);
+                putAssociative(Integer.toString(max + 1), c);
             }
         }
         if(c instanceof CArray){
@@ -178,6 +211,7 @@ public class CArray extends Construct implements ArrayAccess{
      * @param c 
      */
     public void set(Construct index, Construct c) {
+        ensureWritable();
         if (!associative_mode) {
             try {
                 int indx = (int) Static.getInt(index);
@@ -191,15 +225,17 @@ public class CArray extends Construct implements ArrayAccess{
             } catch (ConfigRuntimeException e) {
                 //Not a number. Convert to associative.
                 associative_array = new TreeMap<String, Construct>(comparator);
+                hasIntKey = false;
+                maxIntKeyStale = false;
                 for (int i = 0; i < array.size(); i++) {
-                    associative_array.put(Integer.toString(i), array.get(i));
+                    putAssociative(Integer.toString(i), array.get(i));
                 }
                 associative_mode = true;
                 array = null; // null out the original array container so it can be GC'd
             }
         }
         if (associative_mode) {
-            associative_array.put(normalizeConstruct(index), c);
+            putAssociative(normalizeConstruct(index), c);
         }
         if(c instanceof CArray){
             ((CArray)c).parent = this;
@@ -208,7 +244,7 @@ public class CArray extends Construct implements ArrayAccess{
     }
     
     public void set(int index, Construct c){
-        this.set(new CInt(index, Target.UNKNOWN), c);
+        this.set(CInt.GetCached(index), c);
     }
     /* Shortcuts */
     
@@ -232,8 +268,9 @@ public class CArray extends Construct implements ArrayAccess{
                 throw new ConfigRuntimeException("The element at index \"" + index.val() + "\" does not exist", ExceptionType.IndexOverflowException, t);
             }
         } else {
-            if(associative_array.containsKey(normalizeConstruct(index))){
-                Construct val = associative_array.get(normalizeConstruct(index));
+            String key = normalizeConstruct(index);
+            Construct val = associative_array.get(key);
+            if(val != null || associative_array.containsKey(key)){
                 if(val instanceof CEntry){
                     return ((CEntry)val).construct();
                 }
@@ -245,7 +282,8 @@ public class CArray extends Construct implements ArrayAccess{
     }
     
     public Construct get(int index, Target t){
-        return this.get(new CInt(index, t), t);
+        //The index's target isn't used, t is
+        return this.get(CInt.GetCached(index), t);
     }
     
     public Construct get(String index, Target t){
@@ -260,6 +298,71 @@ public class CArray extends Construct implements ArrayAccess{
         return this.get(index, Target.UNKNOWN);
     }
     
+    /**
+     * Returns an iterator over the values in this array. The array is not copied;
+     * in normal mode, the iterator walks the indexes up to the current size, and in
+     * associative mode, it moves from each key to the next one in the array as it
+     * is at that time. Changes made to the array while it's being iterated are
+     * therefore seen, and never cause the iteration to fail.
+     * @param t
+     * @return 
+     */
+    public Iterator<Construct> iterator(final Target t){
+        if(!associative_mode){
+            return new Iterator<Construct>() {
+                int index = 0;
+
+                public boolean hasNext() {
+                    return index < size();
+                }
+
+                public Construct next() {
+                    if(!hasNext()){
+                        throw new NoSuchElementException();
+                    }
+                    //This also works if the array has since become associative
+                    return get(index++, t);
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        } else {
+            return new Iterator<Construct>() {
+                String last = null;
+
+                private String nextKey(){
+                    if(associative_array.isEmpty()){
+                        return null;
+                    }
+                    return last == null ? associative_array.firstKey() : associative_array.higherKey(last);
+                }
+
+                public boolean hasNext() {
+                    return nextKey() != null;
+                }
+
+                public Construct next() {
+                    String key = nextKey();
+                    if(key == null){
+                        throw new NoSuchElementException();
+                    }
+                    last = key;
+                    Construct val = associative_array.get(key);
+                    if(val instanceof CEntry){
+                        return ((CEntry)val).construct();
+                    }
+                    return val;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+    
     public boolean containsKey(String c){
         Integer i;
         try{
@@ -300,12 +403,16 @@ public class CArray extends Construct implements ArrayAccess{
 
     @Override
     public String val() {
+        if(valueDirty){
+            mutVal = getString();
+            valueDirty = false;
+        }
         return mutVal;
     }
 
     @Override
     public String toString() {
-        return mutVal;
+        return val();
     }
 
     public int size() {
@@ -320,16 +427,44 @@ public class CArray extends Construct implements ArrayAccess{
     public CArray clone() throws CloneNotSupportedException {
         CArray clone = (CArray) super.clone();
         clone.associative_mode = associative_mode;
-        if(associative_mode){
-            if (array != null) {
-                clone.array = new ArrayList<Construct>(this.array);
+        //The containers are shared until either array is changed, at which point
+        //that array copies them, so changes to one never leak into the other.
+        //The tracked integer keys are plain fields, so they were copied above.
+        copyOnWrite = true;
+        clone.copyOnWrite = true;
+        clone.valueDirty = true;
+        return clone;
+    }
+
+    /**
+     * Clones this array, and all the arrays inside it, so that nothing in the clone,
+     * however deep, is shared with this array. The containers of arrays that hold no
+     * other arrays are still shared until they are changed, as with clone.
+     * @return
+     * @throws CloneNotSupportedException 
+     */
+    public CArray deepClone() throws CloneNotSupportedException {
+        CArray clone = clone();
+        clone.parent = null;
+        if(!associative_mode){
+            for(int i = 0; i < array.size(); i++){
+                if(array.get(i) instanceof CArray){
+                    clone.ensureWritable();
+                    CArray inner = ((CArray)array.get(i)).deepClone();
+                    inner.parent = clone;
+                    clone.array.set(i, inner);
+                }
             }
         } else {
-            if(associative_array != null){
-                clone.associative_array = new TreeMap<String, Construct>(this.associative_array);
+            for(Map.Entry<String, Construct> entry : associative_array.entrySet()){
+                if(entry.getValue() instanceof CArray){
+                    clone.ensureWritable();
+                    CArray inner = ((CArray)entry.getValue()).deepClone();
+                    inner.parent = clone;
+                    clone.associative_array.put(entry.getKey(), inner);
+                }
             }
         }
-        clone.regenValue();
         return clone;
     }
     
@@ -356,6 +491,7 @@ public class CArray extends Construct implements ArrayAccess{
     public Construct remove(Construct construct) {
         String c = normalizeConstruct(construct);
         Construct ret;
+        ensureWritable();
         if(!associative_mode){
             try{
                 ret = array.remove(Integer.parseInt(c));
@@ -364,31 +500,108 @@ public class CArray extends Construct implements ArrayAccess{
             }
         } else {
             ret = associative_array.remove(c);
+            Integer i = parseIntKey(c);
+            if(ret != null && i != null && hasIntKey && i == maxIntKey){
+                maxIntKeyStale = true;
+            }
         }
         regenValue();
         return ret;
     }
     
-    private Comparator<String> comparator = new Comparator<String>(){
+    /**
+     * Puts the value in the associative array, keeping track of the largest
+     * integer key.
+     * @param key
+     * @param c 
+     */
+    private void putAssociative(String key, Construct c){
+        associative_array.put(key, c);
+        if(!maxIntKeyStale){
+            Integer i = parseIntKey(key);
+            if(i != null && (!hasIntKey || i > maxIntKey)){
+                maxIntKey = i;
+                hasIntKey = true;
+            }
+        }
+    }
+    
+    /**
+     * Returns true if there are any integer keys in the associative array,
+     * in which case maxIntKey is the largest of them.
+     * @return 
+     */
+    private boolean hasMaxIntKey(){
+        if(maxIntKeyStale){
+            hasIntKey = false;
+            for(String key : associative_array.keySet()){
+                Integer i = parseIntKey(key);
+                if(i != null && (!hasIntKey || i > maxIntKey)){
+                    maxIntKey = i;
+                    hasIntKey = true;
+                }
+            }
+            maxIntKeyStale = false;
+        }
+        return hasIntKey;
+    }
+    
+    /**
+     * Returns the key as an integer, or null if it isn't one. This avoids
+     * the cost of a NumberFormatException for keys that obviously aren't numbers.
+     * @param key
+     * @return 
+     */
+    private static Integer parseIntKey(String key){
+        if(key.length() == 0){
+            return null;
+        }
+        char c = key.charAt(0);
+        if((c < '0' || c > '9') && c != '-' && c != '+'){
+            return null;
+        }
+        try{
+            return Integer.parseInt(key);
+        } catch(NumberFormatException e){
+            return null;
+        }
+    }
+    
+    /**
+     * Returns true if the string is made up of only digits and periods.
+     * @param s
+     * @return 
+     */
+    private static boolean isNumeric(String s){
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if((c < '0' || c > '9') && c != '.'){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static final Comparator<String> comparator = new Comparator<String>(){
 
         public int compare(String o1, String o2) {
             //Due to a dumb behavior in Double.parseDouble, 
             //we need to check to see if there are non-digit characters in
             //the keys, and if so, do a string comparison.
-            if(o1.matches(".*[^0-9\\.]+.*") || o2.matches(".*[^0-9\\.]+.*")){
+            if(!isNumeric(o1) || !isNumeric(o2)){
                 return o1.compareTo(o2);
             }
             try{
                 int i1 = Integer.parseInt(o1);
                 int i2 = Integer.parseInt(o2);
                 //They're both integers, do an integer comparison
-                return new Integer(i1).compareTo(new Integer(i2));
+                return i1 < i2 ? -1 : (i1 == i2 ? 0 : 1);
             } catch(NumberFormatException e){
                 try{                    
                     double d1 = Double.parseDouble(o1);
                     double d2 = Double.parseDouble(o2);
                     //They're both doubles, do a double comparison
-                    return new Double(d1).compareTo(new Double(d2));
+                    return Double.compare(d1, d2);
                 } catch(NumberFormatException ee){
                     //Just do a string comparison
                     return o1.compareTo(o2);
@@ -15,14 +15,38 @@ import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 public class CBoolean extends Construct implements Cloneable{
     
     public static final long serialVersionUID = 1L;
+    private static final CBoolean TRUE = new CBoolean(true, Target.UNKNOWN, true);
+    private static final CBoolean FALSE = new CBoolean(false, Target.UNKNOWN, true);
+    
     private final boolean val;
+    /**
+     * The cached booleans are shared, so their target can't be changed.
+     */
+    private final boolean shared;
+    
+    /**
+     * Returns the shared CBoolean for the given value. Its target is unknown, so this
+     * should only be used where the target doesn't matter.
+     * @param value
+     * @return 
+     */
+    public static CBoolean GetCached(boolean value){
+        return value ? TRUE : FALSE;
+    }
+    
     public CBoolean(boolean value, Target t){
+        this(value, t, false);
+    }
+    
+    private CBoolean(boolean value, Target t, boolean shared){
         super(Boolean.toString(value), ConstructType.BOOLEAN, t);
         val = value;
+        this.shared = shared;
     }
 
     public CBoolean(String value, Target t){
         super(value, ConstructType.BOOLEAN, t);
+        shared = false;
         boolean tempVal;
         try{
             int i = Integer.parseInt(value);
@@ -63,6 +87,13 @@ public class CBoolean extends Construct implements Cloneable{
         }
     }
     
+    @Override
+    void setTarget(Target target) {
+        if(!shared){
+            super.setTarget(target);
+        }
+    }
+    
     @Override
     public CBoolean clone() throws CloneNotSupportedException{
         return this;
@@ -27,10 +27,16 @@ public class CDouble extends Construct implements Cloneable{
     }
 
     public CDouble(double value, Target t){
-        super(Double.toString(value), ConstructType.DOUBLE, t);
+        //The string form is only built if it's needed
+        super(null, ConstructType.DOUBLE, t);
         val = value;
     }
 
+    @Override
+    protected String computeValue() {
+        return Double.toString(val);
+    }
+
     public double getDouble(){
         return val;
     }
@@ -30,6 +30,10 @@ public class CEntry extends Construct{
     public Construct construct(){
         return this.construct;
     }
+    
+    public Construct ckey(){
+        return this.ckey;
+    }
 
     @Override
     public boolean isDynamic() {
@@ -4,6 +4,10 @@
  */
 package com.laytonsmith.core.constructs;
 
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.functions.Function;
+import com.laytonsmith.core.functions.FunctionList;
+
 /**
  *
  * @author layton
@@ -11,15 +15,44 @@ package com.laytonsmith.core.constructs;
 public class CFunction extends Construct {
     
     public static final long serialVersionUID = 1L;    
+    
+    private final boolean procedure;
+    private transient Function function;
 
     public CFunction(String name, Target t) {
         super(name, ConstructType.FUNCTION, t);
+        //Procedures are named _proc, but __compiler_functions__ are real functions
+        procedure = name != null && name.length() > 1 && name.charAt(0) == '_' && name.charAt(1) != '_';
     }
 
     public String toString() {
         return getValue();
     }
     
+    /**
+     * Returns true if this is a call to a user defined procedure, as opposed
+     * to a builtin function. This is decided once, when the node is created.
+     * @return 
+     */
+    public boolean isProcedure(){
+        return procedure;
+    }
+    
+    /**
+     * Returns the function this node is bound to. The first call looks the
+     * function up in the FunctionList and binds it, which the compiler's link
+     * pass does for every node, so the interpreter normally just reads the field.
+     * Nodes the compiler didn't see are bound the first time they're run.
+     * @return
+     * @throws ConfigCompileException If the function doesn't exist, or this is a procedure
+     */
+    public Function getFunction() throws ConfigCompileException{
+        if(function == null){
+            function = (Function)FunctionList.getFunction(this);
+        }
+        return function;
+    }
+    
     @Override
     public CFunction clone() throws CloneNotSupportedException{
         return (CFunction) super.clone();
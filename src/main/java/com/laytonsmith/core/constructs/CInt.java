@@ -15,9 +15,38 @@ import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 public class CInt extends Construct implements Cloneable{
     
     public static final long serialVersionUID = 1L;
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final CInt[] CACHE = new CInt[CACHE_HIGH - CACHE_LOW + 1];
+    static {
+        for(int i = 0; i < CACHE.length; i++){
+            CACHE[i] = new CInt(i + CACHE_LOW, true);
+        }
+    }
+    
     final long val;
+    /**
+     * Cached ints are shared, so their target can't be changed.
+     */
+    private final boolean shared;
+    
+    /**
+     * Returns a CInt with the given value and an unknown target. Small values are
+     * shared rather than created each time, so this should only be used where the
+     * target doesn't matter, since the target of a shared CInt is always unknown.
+     * @param value
+     * @return 
+     */
+    public static CInt GetCached(long value){
+        if(value >= CACHE_LOW && value <= CACHE_HIGH){
+            return CACHE[(int)value - CACHE_LOW];
+        }
+        return new CInt(value, Target.UNKNOWN);
+    }
+    
     public CInt(String value, Target t){
         super(value, ConstructType.INT, t);
+        shared = false;
         try{
             val = Long.parseLong(value);
         } catch(NumberFormatException e){
@@ -26,8 +55,28 @@ public class CInt extends Construct implements Cloneable{
     }
     
     public CInt(long value, Target t){
-        super(Long.toString(value), ConstructType.INT, t);
+        //The string form is only built if it's needed
+        super(null, ConstructType.INT, t);
         val = value;
+        shared = false;
+    }
+    
+    private CInt(long value, boolean shared){
+        super(null, ConstructType.INT, Target.UNKNOWN);
+        val = value;
+        this.shared = shared;
+    }
+
+    @Override
+    protected String computeValue() {
+        return Long.toString(val);
+    }
+
+    @Override
+    void setTarget(Target target) {
+        if(!shared){
+            super.setTarget(target);
+        }
     }
 
     public long getInt(){
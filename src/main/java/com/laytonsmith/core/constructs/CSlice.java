@@ -2,12 +2,15 @@ package com.laytonsmith.core.constructs;
 
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.natives.interfaces.Sequence;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  *
  * @author layton
  */
-public class CSlice extends Construct {
+public class CSlice extends Construct implements Sequence {
     private long start;
     private long finish;
     public CSlice(String slice, Target t) throws ConfigCompileException{
@@ -53,6 +56,33 @@ public class CSlice extends Construct {
         return finish;
     }
 
+    /**
+     * Returns an iterator over the integers from start to finish, inclusive. The
+     * integers are created as they are needed, not all at once.
+     * @param t
+     * @return 
+     */
+    public Iterator<Construct> iterator(final Target t){
+        return new Iterator<Construct>() {
+            long next = start;
+
+            public boolean hasNext() {
+                return next <= finish;
+            }
+
+            public Construct next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                return new CInt(next++, t);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
     @Override
     public boolean isDynamic() {
         return false;
@@ -29,7 +29,13 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
         SYMBOL, IDENTIFIER
     }
     private final ConstructType ctype;
-    private final String value;
+    /**
+     * The string form of this construct. Constructs that are built from some other
+     * form, such as a number, may pass null to the constructor and override
+     * computeValue instead, in which case the string is only built the first time
+     * it's needed. Most numbers are never turned into a string at all.
+     */
+    private String value;
 
     private Target target;
 
@@ -46,7 +52,22 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
     }
     
     public String getValue() {
-        return value;
+        String v = value;
+        if(v == null){
+            v = computeValue();
+            value = v;
+        }
+        return v;
+    }
+    
+    /**
+     * Returns the string form of this construct, if null was passed to the constructor.
+     * This is called at most once per construct that has a string form, and the result
+     * is kept. By default, this returns null.
+     * @return 
+     */
+    protected String computeValue(){
+        return null;
     }
 
     public int getLineNum() {
@@ -82,7 +103,7 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
      * @return 
      */
     public String val() {
-        return value;
+        return getValue();
     }
     
     /**
@@ -98,7 +119,7 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
 
     @Override
     public String toString() {
-        return value;
+        return getValue();
     }
 
     @Override
@@ -214,13 +235,13 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
             Number n = (Number) o;
             if (n.longValue() == n.doubleValue()) {
                 //It's an int
-                return new CInt(n.longValue(), Target.UNKNOWN);
+                return CInt.GetCached(n.longValue());
             } else {
                 //It's a double
                 return new CDouble(n.doubleValue(), Target.UNKNOWN);
             }
         } else if (o instanceof Boolean) {
-            return new CBoolean(((Boolean) o).booleanValue(), Target.UNKNOWN);
+            return CBoolean.GetCached(((Boolean) o).booleanValue());
         } else if (o instanceof java.util.List) {
             java.util.List l = (java.util.List) o;
             CArray ca = new CArray(t);
@@ -244,16 +265,18 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
     }
 
     public int compareTo(Construct c) {
-        if(this.value.contains(" ") || this.value.contains("\t") 
-                || c.value.contains(" ") || c.value.contains("\t")){
-            return this.value.compareTo(c.value);
+        String value = this.getValue();
+        String cvalue = c.getValue();
+        if(value.contains(" ") || value.contains("\t") 
+                || cvalue.contains(" ") || cvalue.contains("\t")){
+            return value.compareTo(cvalue);
         }
         try {
-            Double d1 = Double.valueOf(this.value);
-            Double d2 = Double.valueOf(c.value);
+            Double d1 = Double.valueOf(value);
+            Double d2 = Double.valueOf(cvalue);
             return d1.compareTo(d2);
         } catch (NumberFormatException e) {
-            return this.value.compareTo(c.value);
+            return value.compareTo(cvalue);
         }
     }
     
@@ -273,13 +296,13 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
             if(o instanceof Integer || o instanceof Long || o instanceof Byte || o instanceof BigInteger
                     || o instanceof AtomicInteger || o instanceof Short){
                 //integral
-                return new CInt(((Number)o).longValue(), Target.UNKNOWN);
+                return CInt.GetCached(((Number)o).longValue());
             } else {
                 //floating point
                 return new CDouble(((Number)o).doubleValue(), Target.UNKNOWN);
             }            
         } else if(o instanceof Boolean){
-            return new CBoolean(((Boolean)o).booleanValue(), Target.UNKNOWN);
+            return CBoolean.GetCached(((Boolean)o).booleanValue());
         } else if(o instanceof Map){
             //associative array
             CArray a = new CArray(Target.UNKNOWN);
@@ -14,6 +14,11 @@ public class IVariable extends Construct implements Cloneable{
     public static final long serialVersionUID = 1L;
     private Construct var_value;
     final private String name;
+    /**
+     * The slot this variable was last found in, in an IVariableList. This is only
+     * a hint, and is verified on each use.
+     */
+    transient int slot = -1;
 
     public IVariable(String name, Target t){
         super(name, ConstructType.IVARIABLE, t);
@@ -4,27 +4,87 @@
  */
 package com.laytonsmith.core.constructs;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 /**
- *
+ * The variables are stored in a flat array of slots. Each IVariable in the code tree
+ * remembers which slot it was last found in, so most lookups are just an array access
+ * and a name check; the name index is only consulted the first time a variable is seen
+ * in this list. Clones share their storage until one of them is written to.
  * @author Layton
  */
 public class IVariableList {
-    Map<String, IVariable> varList = new HashMap<String, IVariable>();
-    
+    private Map<String, Integer> index = new HashMap<String, Integer>();
+    private IVariable[] slots = new IVariable[8];
+    private int size = 0;
+    /**
+     * If true, index and slots may also be referenced by another list, and must be
+     * copied before they are changed.
+     */
+    private boolean shared = false;
+
     public void set(IVariable v){
-        varList.put(v.getName(), v);
+        Integer slot = index.get(v.getName());
+        copyIfShared();
+        if(slot == null){
+            add(v);
+        } else {
+            slots[slot] = v;
+        }
     }
-    
+
     public IVariable get(String name, Target t){
-        if(!varList.containsKey(name)){
-            this.set(new IVariable(name, t));
+        Integer slot = index.get(name);
+        IVariable v;
+        if(slot == null){
+            v = new IVariable(name, t);
+            copyIfShared();
+            add(v);
+        } else {
+            v = slots[slot];
+        }
+        v.setTarget(t);
+        return v;
+    }
+
+    /**
+     * Returns the value of the variable referenced by this IVariable (usually,
+     * the one in the code tree), creating it if it doesn't exist yet. This is
+     * equivalent to {@code get(var.getName(), var.getTarget())}, but uses the
+     * variable's cached slot if possible.
+     * @param var
+     * @return
+     */
+    public IVariable get(IVariable var){
+        int slot = var.slot;
+        if(slot >= 0 && slot < size && slots[slot].getName().equals(var.getName())){
+            IVariable v = slots[slot];
+            v.setTarget(var.getTarget());
+            return v;
+        }
+        IVariable v = get(var.getName(), var.getTarget());
+        var.slot = index.get(var.getName());
+        return v;
+    }
+
+    private void add(IVariable v){
+        if(size == slots.length){
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        index.put(v.getName(), size);
+        slots[size++] = v;
+    }
+
+    private void copyIfShared(){
+        if(shared){
+            index = new HashMap<String, Integer>(index);
+            slots = Arrays.copyOf(slots, slots.length);
+            shared = false;
         }
-        varList.get(name).setTarget(t);
-        return varList.get(name);
     }
 
     @Override
@@ -32,8 +92,8 @@ public class IVariableList {
         StringBuilder b = new StringBuilder();
         b.append("[");
         boolean first = true;
-        for(Map.Entry<String, IVariable> entry : varList.entrySet()){
-            IVariable iv = entry.getValue();
+        for(int i = 0; i < size; i++){
+            IVariable iv = slots[i];
             if(first){
                 first = false;
             } else {
@@ -44,18 +104,27 @@ public class IVariableList {
         b.append("]");
         return b.toString();
     }
-    
+
     @Override
     public IVariableList clone(){
         IVariableList clone = new IVariableList();
-        clone.varList = new HashMap<String, IVariable>(varList);
+        clone.index = index;
+        clone.slots = slots;
+        clone.size = size;
+        clone.shared = true;
+        this.shared = true;
         return clone;
     }
 
-    //only the reflection package should be accessing this
+    /**
+     * Returns a copy of the names of the variables that are currently set. It is a
+     * snapshot, since the index may be swapped for a new one once it's written to.
+     * Only the reflection package should be accessing this.
+     * @return 
+     */
     public Set<String> keySet() {
-        return varList.keySet();
+        return new HashSet<String>(index.keySet());
     }
-    
-    
+
+
 }
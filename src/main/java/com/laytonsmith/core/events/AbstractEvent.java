@@ -79,6 +79,28 @@ public abstract class AbstractEvent implements Event, Comparable<Event> {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Bound events are indexed by the value of this prefilter, so that when the event
+     * fires, binds that filter on some other value aren't checked at all. Only return
+     * a prefilter here if matches() always checks it against {@link #getIndexValue}
+     * with a string or macro match. By default, events aren't indexed, and null is
+     * returned.
+     * @return 
+     */
+    public String getIndexPrefilter(){
+        return null;
+    }
+    
+    /**
+     * Returns the value of the event for the prefilter returned by {@link #getIndexPrefilter},
+     * or null if it isn't known, in which case all the binds are checked.
+     * @param e
+     * @return 
+     */
+    public String getIndexValue(BindableEvent e){
+        return null;
+    }
+
     /**
      * For sorting and optimizing events, we need a comparison operation. By default
      * it is compared by looking at the event name.
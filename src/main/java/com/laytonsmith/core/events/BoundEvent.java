@@ -29,12 +29,19 @@ public class BoundEvent implements Comparable<BoundEvent> {
 
     private final String eventName;
     private final String id;
+    /**
+     * The name the profiler records this handler under. The id usually changes each
+     * time the handler is bound, so where it was bound is used instead.
+     */
+    private final String profileName;
     private final Priority priority;
     private final Map<String, Construct> prefilter;
     private final String eventObjName;
     private Env originalEnv;
     private final GenericTreeNode<Construct> tree; //The code closure for this event
+    private final Script script; //The closure, ready to run. Built once, and reused each time the event fires
     private final Driver driver; //For efficiency sake, cache it here
+    private final Event eventDriver; //Likewise
     private static int EventID = 0;
     private final Target target;
 
@@ -137,7 +144,8 @@ public class BoundEvent implements Comparable<BoundEvent> {
             this.priority = Priority.NORMAL;
         }
 
-        this.prefilter = new HashMap<String, Construct>();
+        //Compiled here, once, rather than each time the event fires
+        this.prefilter = new Prefilters.PrefilterMap();
         if (prefilter != null) {
             for (String key : prefilter.keySet()) {
                 this.prefilter.put(key, prefilter.get(key, Target.UNKNOWN));
@@ -146,14 +154,19 @@ public class BoundEvent implements Comparable<BoundEvent> {
 
         this.originalEnv = env;
         this.tree = tree;
+        GenericTreeNode<Construct> superRoot = new GenericTreeNode<Construct>(null);
+        superRoot.addChild(tree);
+        this.script = Script.GenerateScript(superRoot, "*");
         
-        if(EventList.getEvent(this.eventName) == null){
+        this.eventDriver = EventList.getEvent(this.eventName);
+        if(this.eventDriver == null){
             throw new EventException("No event named \"" + this.eventName + "\" is registered!");
         }
-        this.driver = EventList.getEvent(this.eventName).driver();
+        this.driver = this.eventDriver.driver();
         this.eventObjName = eventObjName;
         
         this.target = t;
+        this.profileName = eventName + " at " + (t.file() == null ? "?" : t.file().getName()) + ":" + t.line();
 
     }
 
@@ -173,6 +186,15 @@ public class BoundEvent implements Comparable<BoundEvent> {
         return target;
     }
     
+    /**
+     * Returns the ms file whose execution bound this event, or null if it wasn't
+     * bound while running an ms file.
+     * @return 
+     */
+    public File getSourceFile(){
+        return originalEnv.GetSourceFile();
+    }
+    
     public String getEventName() {
         return eventName;
     }
@@ -217,7 +239,9 @@ public class BoundEvent implements Comparable<BoundEvent> {
      * When the event actually occurs, this should be run, after translating the
      * original event object (of whatever type it may be) into a standard map, which
      * contains the event object data. It is converted into a CArray here, and then
-     * the script is executed with the driver's execute function.
+     * the script is executed with the driver's execute function. The event is only
+     * converted once for all the handlers it is fired to, and each handler gets its
+     * own deep copy of the event object.
      * @param event 
      */
     public void trigger(ActiveEvent activeEvent) throws EventException {
@@ -225,23 +249,12 @@ public class BoundEvent implements Comparable<BoundEvent> {
     //        GenericTree<Construct> root = new GenericTree<Construct>();
     //        root.setRoot(tree);
             Env env = originalEnv.clone();
-            CArray ca = new CArray(Target.UNKNOWN);
-            for (String key : activeEvent.parsedEvent.keySet()) {
-                ca.set(new CString(key, Target.UNKNOWN), activeEvent.parsedEvent.get(key));
-            }
-            if(activeEvent.parsedEvent.containsKey("player")){
-                try{
-                    MCPlayer p = Static.GetPlayer(activeEvent.parsedEvent.get("player"));
-                    if(p != null && p.isOnline()){
-                        env.SetPlayer(p);                                        
-                    }                    
-                } catch(ConfigRuntimeException e){
-                    if(!e.getExceptionType().equals(Exceptions.ExceptionType.PlayerOfflineException)){
-                        throw e;
-                    }
-                    //else we just leave the player to be null. It either doesn't matter here,
-                    //or the event will add it later, manually.
-                }
+            //Deep, so that a handler changing an array inside the event (a location, say)
+            //doesn't change it for the handlers after it
+            CArray ca = activeEvent.getEventObject().deepClone();
+            MCPlayer p = activeEvent.getPlayer();
+            if(p != null){
+                env.SetPlayer(p);
             }
             env.GetVarList().set(new IVariable(eventObjName, ca, Target.UNKNOWN));
             env.SetEvent(activeEvent);
@@ -283,11 +296,12 @@ public class BoundEvent implements Comparable<BoundEvent> {
     }
     
     private void execute(Env env, ActiveEvent activeEvent) throws EventException{
-        GenericTreeNode<Construct> superRoot = new GenericTreeNode<Construct>(null);
-        superRoot.addChild(tree);
-        Script s = Script.GenerateScript(superRoot, "*");        
-        Event myDriver = this.getEventDriver();
-        myDriver.execute(s, this, env, activeEvent);
+        Profiler.Frame frame = Profiler.Start();
+        try {
+            this.getEventDriver().execute(script, this, env, activeEvent);
+        } finally {
+            Profiler.Stop(frame, Profiler.Kind.EVENT, profileName);
+        }
     }
     
     /**
@@ -295,7 +309,7 @@ public class BoundEvent implements Comparable<BoundEvent> {
      * @return 
      */
     public Event getEventDriver(){
-        return EventList.getEvent(this.getDriver(), this.getEventName());
+        return eventDriver;
     }
     
     /**
@@ -304,11 +318,15 @@ public class BoundEvent implements Comparable<BoundEvent> {
      * an ActiveEvent is generated, stored in the environment, and then the script is triggered. This ActiveEvent contains both
      * the underlying event (if needed for things like cancellation or other event manipulation) and the BoundEvent object itself
      * (which can be used to get the event id and other information as needed). For convenience, the parsed event information
-     * is also cached here.
+     * is also cached here. The underlying event is only parsed when the first handler runs, and then shared with the rest of
+     * the handlers, unless a handler modifies the underlying event, in which case it is parsed again for the next one.
      */
     public static class ActiveEvent{
         private final BindableEvent underlyingEvent;
         private Map<String, Construct> parsedEvent;
+        private CArray eventObject;
+        private MCPlayer player;
+        private boolean playerResolved;
         private BoundEvent boundEvent;
         private Boolean cancelled;
         private BoundEvent consumedAt;
@@ -340,6 +358,79 @@ public class BoundEvent implements Comparable<BoundEvent> {
         public Map<String, Construct> getParsedEvent() {
             return parsedEvent;
         }
+        
+        /**
+         * Returns the parsed event, evaluating the underlying event with the driver
+         * if that hasn't been done yet.
+         * @return
+         * @throws EventException 
+         */
+        private Map<String, Construct> parse() throws EventException {
+            if(parsedEvent == null){
+                parsedEvent = boundEvent.getEventDriver().evaluate(underlyingEvent);
+            }
+            return parsedEvent;
+        }
+        
+        /**
+         * Returns the event object, as an array. This is shared by all the handlers, so
+         * it should be cloned before it's given to a script.
+         * @return
+         * @throws EventException 
+         */
+        private CArray getEventObject() throws EventException {
+            if(eventObject == null){
+                Map<String, Construct> map = parse();
+                CArray ca = new CArray(Target.UNKNOWN);
+                ca.forceAssociativeMode();
+                for (String key : map.keySet()) {
+                    ca.set(new CString(key, Target.UNKNOWN), map.get(key));
+                }
+                eventObject = ca;
+            }
+            return eventObject;
+        }
+        
+        /**
+         * Returns the online player named in the event's player parameter, or null
+         * if there isn't one.
+         * @return
+         * @throws EventException 
+         */
+        private MCPlayer getPlayer() throws EventException {
+            if(!playerResolved){
+                Map<String, Construct> map = parse();
+                player = null;
+                if(map.containsKey("player")){
+                    try{
+                        MCPlayer p = Static.GetPlayer(map.get("player"));
+                        if(p != null && p.isOnline()){
+                            player = p;
+                        }
+                    } catch(ConfigRuntimeException e){
+                        if(!e.getExceptionType().equals(Exceptions.ExceptionType.PlayerOfflineException)){
+                            throw e;
+                        }
+                        //else we just leave the player to be null. It either doesn't matter here,
+                        //or the event will add it later, manually.
+                    }
+                }
+                playerResolved = true;
+            }
+            return player;
+        }
+        
+        /**
+         * Should be called when the underlying event is modified, so that the next
+         * handler sees the change.
+         */
+        public void invalidateParsedEvent(){
+            if(underlyingEvent != null){
+                parsedEvent = null;
+            }
+            eventObject = null;
+            playerResolved = false;
+        }
 
         public BindableEvent getUnderlyingEvent() {
             return underlyingEvent;
@@ -355,6 +446,8 @@ public class BoundEvent implements Comparable<BoundEvent> {
         
         public void setParsedEvent(Map<String, Construct> parsedEvent){
             this.parsedEvent = parsedEvent;
+            this.eventObject = null;
+            this.playerResolved = false;
         }
 
         public boolean isCancelled() {
@@ -13,7 +13,9 @@ import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.exceptions.EventException;
 import com.laytonsmith.core.exceptions.FunctionReturnException;
 import com.laytonsmith.core.exceptions.PrefilterNonMatchException;
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -23,6 +25,119 @@ public class EventUtils {
 
     private static final Map<Driver, SortedSet<BoundEvent>> event_handles =
             new EnumMap<Driver, SortedSet<BoundEvent>>(Driver.class);
+    
+    /**
+     * The bound events, indexed by event name. The indexes are rebuilt from
+     * event_handles the next time the event fires after a bind or unbind, and
+     * are never modified once built, so triggering doesn't need to lock.
+     */
+    private static final Map<String, EventIndex> event_index =
+            new ConcurrentHashMap<String, EventIndex>();
+    
+    private static final BoundEvent[] NO_EVENTS = new BoundEvent[0];
+
+    /**
+     * All the events bound to a single event type, sorted by priority. If the event
+     * has an index prefilter, the binds whose index prefilter is a plain string are
+     * also grouped by that string, and everything else is in the unindexed list.
+     */
+    private static class EventIndex {
+        private final BoundEvent[] all;
+        private final BoundEvent[] unindexed;
+        private final Map<String, BoundEvent[]> indexed;
+        private final String prefilter;
+
+        private EventIndex(Event driver, SortedSet<BoundEvent> bound) {
+            List<BoundEvent> allList = new ArrayList<BoundEvent>();
+            List<BoundEvent> unindexedList = new ArrayList<BoundEvent>();
+            Map<String, List<BoundEvent>> indexedLists = new HashMap<String, List<BoundEvent>>();
+            prefilter = driver instanceof AbstractEvent ? ((AbstractEvent) driver).getIndexPrefilter() : null;
+            if (bound != null) {
+                for (BoundEvent b : bound) {
+                    if (!b.getEventName().equals(driver.getName())) {
+                        continue;
+                    }
+                    allList.add(b);
+                    Prefilters.CompiledPrefilter p = null;
+                    if (prefilter != null && b.getPrefilter() instanceof Prefilters.PrefilterMap) {
+                        p = ((Prefilters.PrefilterMap) b.getPrefilter()).getCompiled(prefilter);
+                    }
+                    if (p != null && p.isPlainString()) {
+                        if (!indexedLists.containsKey(p.getValue())) {
+                            indexedLists.put(p.getValue(), new ArrayList<BoundEvent>());
+                        }
+                        indexedLists.get(p.getValue()).add(b);
+                    } else {
+                        unindexedList.add(b);
+                    }
+                }
+            }
+            //The sets are already sorted by priority, so the lists are too
+            all = allList.toArray(NO_EVENTS);
+            unindexed = unindexedList.toArray(NO_EVENTS);
+            indexed = new HashMap<String, BoundEvent[]>();
+            for (String key : indexedLists.keySet()) {
+                indexed.put(key, indexedLists.get(key).toArray(NO_EVENTS));
+            }
+        }
+
+        private boolean isEmpty() {
+            return all.length == 0;
+        }
+
+        /**
+         * Returns, in priority order, the bound events that could match this
+         * event. The prefilters still have to be checked.
+         */
+        private BoundEvent[] candidates(Event driver, BindableEvent e) {
+            if (prefilter == null || all.length == unindexed.length) {
+                return all;
+            }
+            String value = ((AbstractEvent) driver).getIndexValue(e);
+            if (value == null) {
+                return all;
+            }
+            BoundEvent[] matching = indexed.get(value);
+            if (matching == null) {
+                return unindexed;
+            }
+            if (unindexed.length == 0) {
+                return matching;
+            }
+            //Merge the two, keeping them in priority order
+            BoundEvent[] merged = new BoundEvent[matching.length + unindexed.length];
+            int i = 0, j = 0, k = 0;
+            while (i < matching.length && j < unindexed.length) {
+                if (matching[i].compareTo(unindexed[j]) < 0) {
+                    merged[k++] = matching[i++];
+                } else {
+                    merged[k++] = unindexed[j++];
+                }
+            }
+            while (i < matching.length) {
+                merged[k++] = matching[i++];
+            }
+            while (j < unindexed.length) {
+                merged[k++] = unindexed[j++];
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Returns the index for the given event, building it if the binds have
+     * changed since it was last used.
+     */
+    private static EventIndex GetIndex(Event driver) {
+        EventIndex index = event_index.get(driver.getName());
+        if (index == null) {
+            synchronized (event_handles) {
+                index = new EventIndex(driver, event_handles.get(driver.driver()));
+                event_index.put(driver.getName(), index);
+            }
+        }
+        return index;
+    }
 
     /**
      * Registers a BoundEvent.
@@ -34,11 +149,14 @@ public class EventUtils {
         if (event == null) {
             throw new EventException("The event type \"" + b.getEventName() + "\" could not be found.");
         }
-        if (!event_handles.containsKey(event.driver())) {
-            event_handles.put(event.driver(), new TreeSet<BoundEvent>());
+        synchronized (event_handles) {
+            if (!event_handles.containsKey(event.driver())) {
+                event_handles.put(event.driver(), new TreeSet<BoundEvent>());
+            }
+            SortedSet<BoundEvent> set = event_handles.get(event.driver());
+            set.add(b);
+            event_index.remove(b.getEventName());
         }
-        SortedSet<BoundEvent> set = event_handles.get(event.driver());
-        set.add(b);
         try {
             event.bind();
         } catch (UnsupportedOperationException e) {
@@ -51,14 +169,17 @@ public class EventUtils {
      * @param id 
      */
     public static void UnregisterEvent(String id) {
-        for (Driver type : event_handles.keySet()) {
-            SortedSet<BoundEvent> set = event_handles.get(type);
-            Iterator<BoundEvent> i = set.iterator();
-            while (i.hasNext()) {
-                BoundEvent b = i.next();
-                if (b.getId().equals(id)) {
-                    i.remove();
-                    return;
+        synchronized (event_handles) {
+            for (Driver type : event_handles.keySet()) {
+                SortedSet<BoundEvent> set = event_handles.get(type);
+                Iterator<BoundEvent> i = set.iterator();
+                while (i.hasNext()) {
+                    BoundEvent b = i.next();
+                    if (b.getId().equals(id)) {
+                        i.remove();
+                        event_index.remove(b.getEventName());
+                        return;
+                    }
                 }
             }
         }
@@ -68,14 +189,38 @@ public class EventUtils {
      * Unregisters all event handlers. Runs in O(n)
      */
     public static void UnregisterAll(String name) {
-        for (Driver type : event_handles.keySet()) {
-            SortedSet<BoundEvent> set = event_handles.get(type);
-            Iterator<BoundEvent> i = set.iterator();
-            while (i.hasNext()) {
-                BoundEvent b = i.next();
-                if (b.getEventObjName().equals(name)) {
-                    i.remove();
-                    return;
+        synchronized (event_handles) {
+            for (Driver type : event_handles.keySet()) {
+                SortedSet<BoundEvent> set = event_handles.get(type);
+                Iterator<BoundEvent> i = set.iterator();
+                while (i.hasNext()) {
+                    BoundEvent b = i.next();
+                    if (b.getEventObjName().equals(name)) {
+                        i.remove();
+                        event_index.remove(b.getEventName());
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Unregisters all the event handlers that were bound by running any of the
+     * specified ms files. This is used when only some of the files are reloaded.
+     * @param sources 
+     */
+    public static void UnregisterFrom(Set<File> sources) {
+        synchronized (event_handles) {
+            for (Driver type : event_handles.keySet()) {
+                Iterator<BoundEvent> i = event_handles.get(type).iterator();
+                while (i.hasNext()) {
+                    BoundEvent b = i.next();
+                    File source = b.getSourceFile();
+                    if (source != null && sources.contains(source)) {
+                        i.remove();
+                        event_index.remove(b.getEventName());
+                    }
                 }
             }
         }
@@ -85,7 +230,10 @@ public class EventUtils {
      * This should be used in the case the plugin is disabled, or /reloadalises is run.
      */
     public static void UnregisterAll() {
-        event_handles.clear();
+        synchronized (event_handles) {
+            event_handles.clear();
+            event_index.clear();
+        }
     }
 
     /**
@@ -98,84 +246,93 @@ public class EventUtils {
     }
 
     public static void ManualTrigger(String eventName, CArray object, boolean serverWide) {
-        for (Driver type : event_handles.keySet()) {
-            SortedSet<BoundEvent> toRun = new TreeSet<BoundEvent>();
-            SortedSet<BoundEvent> bounded = GetEvents(type);
-            Event driver = EventList.getEvent(type, eventName);
-            if (bounded != null) {
-                for (BoundEvent b : bounded) {
-                    if(b.getEventName().equalsIgnoreCase(eventName)){
-                        try {
-                            BindableEvent convertedEvent;
-                            try{
-                                convertedEvent = driver.convert(object);
-                            } catch(ConfigRuntimeException e){
-                                ConfigRuntimeException.React(e, "Did you include all the event parameters?");
-                                continue;
-                            }
-                            if (driver.matches(b.getPrefilter(), convertedEvent)) {
-                                toRun.add(b);
-                            }
-                        } catch (PrefilterNonMatchException ex) {
-                            //Not running this one
-                        }
-                    }
+        Event driver = EventList.getEvent(eventName.toLowerCase());
+        List<BoundEvent> toRun = Collections.emptyList();
+        if (driver != null) {
+            EventIndex index = GetIndex(driver);
+            if (!index.isEmpty()) {
+                BindableEvent convertedEvent;
+                try{
+                    convertedEvent = driver.convert(object);
+                } catch(ConfigRuntimeException e){
+                    ConfigRuntimeException.React(e, "Did you include all the event parameters?");
+                    return;
                 }
+                toRun = Matching(index, driver, convertedEvent);
             }
-            //If it's not a serverwide event, or this event doesn't support external events.
-            if (!toRun.isEmpty()) {
-                if (!serverWide || !driver.supportsExternal()) {
-                    FireListeners(toRun, driver, driver.convert(object));
-                } else {
-                    //It's serverwide, so we can just trigger it normally with the driver, and it should trickle back down to us
-                    driver.manualTrigger(driver.convert(object));
-                }
+        }
+        //If it's not a serverwide event, or this event doesn't support external events.
+        if (!toRun.isEmpty()) {
+            if (!serverWide || !driver.supportsExternal()) {
+                FireListeners(toRun, driver, driver.convert(object));
             } else {
-                //They have fired a non existant event
-                ConfigRuntimeException.DoWarning(new ConfigRuntimeException("Non existant event is being triggered: " + eventName, object.getTarget()));
+                //It's serverwide, so we can just trigger it normally with the driver, and it should trickle back down to us
+                driver.manualTrigger(driver.convert(object));
             }
+        } else {
+            //They have fired a non existant event
+            ConfigRuntimeException.DoWarning(new ConfigRuntimeException("Non existant event is being triggered: " + eventName, object.getTarget()));
         }
     }
 
     /**
-     * Triggers an event by name. The event name is the primary filter for this event, but
-     * to increase event lookup efficiency, the driver is required. This will run in O(n),
-     * where n is the number of bound events driven by type <code>type</code>.
+     * Triggers an event by name. The bound events are indexed by event name, so
+     * finding the ones to run is a lookup, followed by checking the prefilters of
+     * the events bound to this event. If the event has an index prefilter, only
+     * the binds that could match its value are checked. If nothing is bound to
+     * this event, this returns almost immediately.
      * @param type
      * @param e 
      */
     public static void TriggerListener(Driver type, String eventName, BindableEvent e) {
-        SortedSet<BoundEvent> toRun = new TreeSet<BoundEvent>();
         //This is the Event driver
         Event driver = EventList.getEvent(type, eventName);
-        //This is the set of bounded events of this driver type. 
-        //We must now look through the bound events to see if they are
-        //the eventName, and if so, we will also run the prefilter.
-        SortedSet<BoundEvent> bounded = GetEvents(type);
-        if (bounded != null) {
-            for (BoundEvent b : bounded) {
-                try {
-                    if (driver.getName().equals(eventName) && driver.matches(b.getPrefilter(), e)) {
-                        toRun.add(b);
+        if (driver == null) {
+            return;
+        }
+        EventIndex index = GetIndex(driver);
+        if (index.isEmpty()) {
+            return;
+        }
+        List<BoundEvent> toRun = Matching(index, driver, e);
+        if (!toRun.isEmpty()) {
+            FireListeners(toRun, driver, e);
+        }
+    }
+
+    /**
+     * Returns the bound events in this index whose prefilters match the event,
+     * in priority order.
+     */
+    private static List<BoundEvent> Matching(EventIndex index, Event driver, BindableEvent e) {
+        List<BoundEvent> toRun = null;
+        for (BoundEvent b : index.candidates(driver, e)) {
+            try {
+                if (driver.matches(b.getPrefilter(), e)) {
+                    if (toRun == null) {
+                        toRun = new ArrayList<BoundEvent>();
                     }
-                } catch (PrefilterNonMatchException ex) {
-                    //Not running this one
+                    toRun.add(b);
                 }
+            } catch (PrefilterNonMatchException ex) {
+                //Not running this one
             }
         }
-
-        FireListeners(toRun, driver, e);
+        if (toRun == null) {
+            return Collections.emptyList();
+        }
+        return toRun;
     }
 
-    private static void FireListeners(SortedSet<BoundEvent> toRun, Event driver, BindableEvent e) {
-        //Sort our event handlers by priorities
+    private static void FireListeners(List<BoundEvent> toRun, Event driver, BindableEvent e) {
+        //toRun is already sorted by priority
         BoundEvent.ActiveEvent activeEvent = new BoundEvent.ActiveEvent(e);
         for (BoundEvent b : toRun) {
             if(activeEvent.canReceive() || b.getPriority().equals(Priority.MONITOR)){
                 try {
-                    //We must re-set the active event's bound event and parsed event
+                    //The event is parsed the first time a handler needs it, and
+                    //then shared with the rest of them
                     activeEvent.setBoundEvent(b);
-                    activeEvent.setParsedEvent(driver.evaluate(e));                    
                     b.trigger(activeEvent);
                 } catch (FunctionReturnException ex){
                     //We also know how to deal with this
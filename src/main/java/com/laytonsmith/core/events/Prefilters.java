@@ -11,7 +11,10 @@ import com.laytonsmith.core.exceptions.PrefilterNonMatchException;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import com.sk89q.worldedit.expression.Expression;
 import com.sk89q.worldedit.expression.ExpressionException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  *
@@ -72,46 +75,177 @@ public class Prefilters {
      * Given a prototype and the actual user provided value, determines if it matches.
      * If it doesn't, it throws an exception. If the value is not provided, or it does
      * match, it returns void, which means that the test passed, and the event matches.
+     * If the map is a {@link PrefilterMap}, as it is for bound events, the prototype
+     * was already compiled when the event was bound, otherwise it is compiled here.
      */
     public static void match(Map<String, Construct> map, String key,
             Construct actualValue, PrefilterType type) throws PrefilterNonMatchException{
-        if(!map.containsKey(key)){
+        CompiledPrefilter prefilter;
+        if(map instanceof PrefilterMap){
+            prefilter = ((PrefilterMap)map).getCompiled(key);
+        } else if(map.containsKey(key)){
+            prefilter = new CompiledPrefilter(key, map.get(key));
+        } else {
+            prefilter = null;
+        }
+        if(prefilter == null){
             return;
         } else {
             switch(type){
                 case ITEM_MATCH:
-                    ItemMatch(map.get(key), actualValue);
+                    ItemMatch(prefilter, actualValue);
                     break;
                 case STRING_MATCH:
-                    StringMatch(map.get(key).val(), actualValue.val());
+                    StringMatch(prefilter.value.val(), actualValue.val());
                     break;
                 case MATH_MATCH:
-                    MathMatch(map.get(key), actualValue);
+                    MathMatch(prefilter, actualValue);
                     break;
                 case EXPRESSION:
-                    ExpressionMatch(MathReplace(key, map.get(key), actualValue), actualValue);
+                    ExpressionMatch(prefilter, actualValue);
                     break;
                 case REGEX:
-                    RegexMatch(map.get(key), actualValue);
+                    RegexMatch(prefilter, actualValue);
                     break;
                 case MACRO:
-                    MacroMatch(key, map.get(key), actualValue);
+                    MacroMatch(prefilter, actualValue);
             }
         }
     }
     
-    private static void ItemMatch(Construct item1, Construct item2) throws PrefilterNonMatchException{
-        String i1 = item1.val();
-        String i2 = item2.val();
-        if(item1.val().contains(":")){
-            String[] split = item1.val().split(":");
-            i1 = split[0].trim();
-        }
-        if(item2.val().contains(":")){
-            String[] split = item2.val().split(":");
-            i2 = split[0].trim();
-        }
-        if(!i1.trim().equalsIgnoreCase(i2.trim())){
+    /**
+     * A prefilter map which compiles each prefilter as it is put in, so that matching
+     * an event against it doesn't have to parse the prefilters again each time the
+     * event fires. Bound events keep their prefilters in one of these.
+     */
+    public static class PrefilterMap extends HashMap<String, Construct>{
+        private final Map<String, CompiledPrefilter> compiled = new HashMap<String, CompiledPrefilter>();
+
+        @Override
+        public Construct put(String key, Construct value) {
+            compiled.put(key, new CompiledPrefilter(key, value));
+            return super.put(key, value);
+        }
+
+        @Override
+        public Construct remove(Object key) {
+            compiled.remove(key);
+            return super.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            compiled.clear();
+            super.clear();
+        }
+        
+        /**
+         * Returns the compiled prefilter for the given key, or null if there is no
+         * prefilter with that key.
+         * @param key
+         * @return 
+         */
+        public CompiledPrefilter getCompiled(String key){
+            CompiledPrefilter c = compiled.get(key);
+            if(c == null && containsKey(key)){
+                c = new CompiledPrefilter(key, get(key));
+            }
+            return c;
+        }
+    }
+    
+    /**
+     * A single prefilter, parsed ahead of time. Which kind of match is used is up to
+     * the event driver, so each form is worked out if the value looks like it can
+     * be used that way. Formatting errors are held on to, and only thrown if the
+     * prefilter is actually matched that way, same as if it were parsed at event time.
+     */
+    public static class CompiledPrefilter{
+        private final Construct value;
+        private final String item;
+        private final Double number;
+        private final Pattern regex;
+        private final ConfigRuntimeException regexError;
+        private final boolean isRegex;
+        private final Expression expression;
+        private final boolean inequalityMode;
+        private final boolean isExpression;
+
+        public CompiledPrefilter(String key, Construct value){
+            this.value = value;
+            String val = value.val();
+            
+            item = ItemID(val);
+            
+            Double d;
+            try{
+                d = Static.getNumber(value);
+            } catch(ConfigRuntimeException e){
+                d = null;
+            }
+            number = d;
+            
+            Pattern p = null;
+            ConfigRuntimeException pe = null;
+            isRegex = val.matches("/.*/");
+            if(isRegex){
+                try{
+                    p = Pattern.compile(val.substring(1, val.length() - 1));
+                } catch(PatternSyntaxException e){
+                    pe = new ConfigRuntimeException("The regex \"" + val + "\" is invalid: " + e.getDescription(), 
+                            ExceptionType.FormatException, value.getTarget());
+                }
+            }
+            regex = p;
+            regexError = pe;
+            
+            Expression e = null;
+            boolean inequality = false;
+            isExpression = val.matches("\\(.*\\)");
+            if(isExpression){
+                String exp = val.substring(1, val.length() - 1);
+                if(exp.contains("<") || exp.contains(">") || exp.contains("==")){
+                    inequality = true;
+                }
+                try{
+                    //The key is bound as a variable, so the event's value can be
+                    //passed in at match time, instead of being pasted into the string.
+                    e = Expression.compile(exp, key);
+                } catch(ExpressionException ex){
+                    //Left null, and reported if it's used as an expression
+                }
+            }
+            expression = e;
+            inequalityMode = inequality;
+        }
+        
+        /**
+         * Returns true if this prefilter is neither a regex nor an expression, so that
+         * a string or macro match against it is just a string comparison.
+         * @return 
+         */
+        public boolean isPlainString(){
+            return !isRegex && !isExpression;
+        }
+        
+        public String getValue(){
+            return value.val();
+        }
+    }
+    
+    /**
+     * Returns the item id part of item notation, that is, everything before the colon.
+     */
+    private static String ItemID(String item){
+        int colon = item.indexOf(':');
+        if(colon != -1){
+            item = item.substring(0, colon);
+        }
+        return item.trim();
+    }
+    
+    private static void ItemMatch(CompiledPrefilter item1, Construct item2) throws PrefilterNonMatchException{
+        if(!item1.item.equalsIgnoreCase(ItemID(item2.val()))){
             throw new PrefilterNonMatchException();
         }
     }
@@ -122,11 +256,13 @@ public class Prefilters {
         }
     }
     
-    private static void MathMatch(Construct one, Construct two) throws PrefilterNonMatchException{
+    private static void MathMatch(CompiledPrefilter one, Construct two) throws PrefilterNonMatchException{
+        if(one.number == null){
+            throw new PrefilterNonMatchException();
+        }
         try{
-            double dOne = Static.getNumber(one);
             double dTwo = Static.getNumber(two);
-            if(dOne != dTwo){
+            if(one.number.doubleValue() != dTwo){
                 throw new PrefilterNonMatchException();
             }
         } catch(ConfigRuntimeException e){
@@ -134,59 +270,61 @@ public class Prefilters {
         }
     }
     
-    private static void ExpressionMatch(Construct expression, Construct dvalue) throws PrefilterNonMatchException{
-        if(expression.val().matches("\\(.*\\)")){
-            String exp = expression.val().substring(1, expression.val().length() - 1);
-            boolean inequalityMode = false;
-            if(exp.contains("<") || exp.contains(">") || exp.contains("==")){
-                inequalityMode = true;
+    private static void ExpressionMatch(CompiledPrefilter expression, Construct dvalue) throws PrefilterNonMatchException{
+        if(expression.isExpression){
+            if(expression.expression == null){
+                throw new ConfigRuntimeException("Your expression is invalidly formatted", 
+                        ExceptionType.FormatException, expression.value.getTarget());
             }
+            double d = Static.getDouble(dvalue);
             try{
-                double val = Expression.compile(exp).evaluate();
-                if(inequalityMode){
+                double val;
+                //The variable's value is stored in the expression while it's evaluated
+                synchronized(expression.expression){
+                    val = expression.expression.evaluate(d);
+                }
+                if(expression.inequalityMode){
                     if(val == 0){
                         throw new PrefilterNonMatchException();
                     }
                 } else {
-                    if(val != Static.getDouble(dvalue)){
+                    if(val != d){
                         throw new PrefilterNonMatchException();
                     }
                 }
             } catch(ExpressionException e){
                 throw new ConfigRuntimeException("Your expression is invalidly formatted", 
-                        ExceptionType.FormatException, expression.getTarget());
+                        ExceptionType.FormatException, expression.value.getTarget());
             }
         } else {
             throw new ConfigRuntimeException("Prefilter expecting expression type, and \"" 
-                    + expression.val() + "\" does not follow expression format. "
+                    + expression.value.val() + "\" does not follow expression format. "
                     + "(Did you surround it in parenthesis?)", 
-                    ExceptionType.FormatException, expression.getTarget());
+                    ExceptionType.FormatException, expression.value.getTarget());
         }
     }
     
-    private static void RegexMatch(Construct expression, Construct value) throws PrefilterNonMatchException{
-        if(expression.val().matches("/.*/")){
-            String exp = expression.val().substring(1, expression.val().length());
-            if(!value.val().matches(exp)){
+    private static void RegexMatch(CompiledPrefilter expression, Construct value) throws PrefilterNonMatchException{
+        if(expression.isRegex){
+            if(expression.regex == null){
+                throw expression.regexError;
+            }
+            if(!expression.regex.matcher(value.val()).matches()){
                 throw new PrefilterNonMatchException();
             }
         } else {
             throw new ConfigRuntimeException("Prefilter expecting regex type, and \"" 
-                    + expression.val() + "\" does not follow regex format", ExceptionType.FormatException, expression.getTarget());
+                    + expression.value.val() + "\" does not follow regex format", ExceptionType.FormatException, expression.value.getTarget());
         }
     }
     
-    private static void MacroMatch(String key, Construct expression, Construct value) throws PrefilterNonMatchException{
-        if(expression.val().matches("\\(.*\\)")){
-            ExpressionMatch(MathReplace(key, expression, value), value);
-        } else if(expression.val().matches("/.*/")){
+    private static void MacroMatch(CompiledPrefilter expression, Construct value) throws PrefilterNonMatchException{
+        if(expression.isExpression){
+            ExpressionMatch(expression, value);
+        } else if(expression.isRegex){
             RegexMatch(expression, value);
         } else {
-            StringMatch(expression.val(), value.val());
+            StringMatch(expression.value.val(), value.val());
         }
     }
-    
-    private static Construct MathReplace(String key, Construct expression, Construct value){
-        return new CString(expression.val().replaceAll(key, value.val()), expression.getTarget());
-    }
 }
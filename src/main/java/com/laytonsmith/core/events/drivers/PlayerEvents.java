@@ -138,6 +138,19 @@ public class PlayerEvents {
             return Driver.PLAYER_INTERACT;
         }
 
+        @Override
+        public String getIndexPrefilter() {
+            return "player";
+        }
+
+        @Override
+        public String getIndexValue(BindableEvent e) {
+            if(e instanceof MCPlayerInteractEvent){
+                return ((MCPlayerInteractEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
+
         public boolean matches(Map<String, Construct> prefilter, BindableEvent e) throws PrefilterNonMatchException {
             if(e instanceof MCPlayerInteractEvent){
                 MCPlayerInteractEvent pie = (MCPlayerInteractEvent)e;
@@ -237,6 +250,19 @@ public class PlayerEvents {
         public Driver driver() {
             return Driver.PLAYER_SPAWN;
         }
+
+        @Override
+        public String getIndexPrefilter() {
+            return "player";
+        }
+
+        @Override
+        public String getIndexValue(BindableEvent e) {
+            if(e instanceof MCPlayerRespawnEvent){
+                return ((MCPlayerRespawnEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
         
         public CHVersion since() {
             return CHVersion.V3_3_0;
@@ -330,6 +356,19 @@ public class PlayerEvents {
         public Driver driver() {
             return Driver.PLAYER_DEATH;
         }
+
+        @Override
+        public String getIndexPrefilter() {
+            return "player";
+        }
+
+        @Override
+        public String getIndexValue(BindableEvent e) {
+            if(e instanceof MCPlayerDeathEvent){
+                return ((MCPlayer)((MCPlayerDeathEvent)e).getEntity()).getName();
+            }
+            return null;
+        }
         
         public CHVersion since() {
             return CHVersion.V3_3_0;
@@ -440,6 +479,19 @@ public class PlayerEvents {
         public Driver driver() {
             return Driver.PLAYER_CHAT;
         }
+
+        @Override
+        public String getIndexPrefilter() {
+            return "player";
+        }
+
+        @Override
+        public String getIndexValue(BindableEvent e) {
+            if(e instanceof MCPlayerChatEvent){
+                return ((MCPlayerChatEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
         
         public CHVersion since() {
             return CHVersion.V3_3_0;
@@ -534,6 +586,19 @@ public class PlayerEvents {
         public Driver driver() {
             return Driver.PLAYER_COMMAND;
         }
+
+        @Override
+        public String getIndexPrefilter() {
+            return "player";
+        }
+
+        @Override
+        public String getIndexValue(BindableEvent e) {
+            if(e instanceof MCPlayerCommandEvent){
+                return ((MCPlayerCommandEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
         
         public CHVersion since() {
             return CHVersion.V3_3_1;
@@ -621,6 +686,19 @@ public class PlayerEvents {
         public Driver driver() {
             return Driver.WORLD_CHANGED;
         }
+
+        @Override
+        public String getIndexPrefilter() {
+            return "player";
+        }
+
+        @Override
+        public String getIndexValue(BindableEvent e) {
+            if(e instanceof MCWorldChangedEvent){
+                return ((MCWorldChangedEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
         
         public CHVersion since() {
             return CHVersion.V3_3_1;
@@ -84,7 +84,7 @@ public class BasicLogic {
         //Doesn't matter, this function is run out of state
 
         public Boolean runAsync() {
-            return false;
+            return null;
         }
 
         @Override
@@ -412,6 +412,18 @@ public class BasicLogic {
                 }
                 return new CBoolean(equals, t);
             }
+            if (args.length == 2) {
+                //The common cases, which can be answered without going through strings
+                if (args[0] instanceof CInt && args[1] instanceof CInt) {
+                    return new CBoolean(((CInt) args[0]).getInt() == ((CInt) args[1]).getInt(), t);
+                }
+                if (args[0] instanceof CDouble && args[1] instanceof CDouble) {
+                    double arg1 = ((CDouble) args[0]).getDouble();
+                    double arg2 = ((CDouble) args[1]).getDouble();
+                    //NaN has always been equal to itself here, since the strings match
+                    return new CBoolean(arg1 == arg2 || (Double.isNaN(arg1) && Double.isNaN(arg2)), t);
+                }
+            }
 
             {
                 boolean equals = true;
@@ -803,6 +815,9 @@ public class BasicLogic {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+            if (args[0] instanceof CInt && args[1] instanceof CInt) {
+                return new CBoolean(((CInt) args[0]).getInt() < ((CInt) args[1]).getInt(), t);
+            }
             double arg1 = Static.getNumber(args[0]);
             double arg2 = Static.getNumber(args[1]);
             return new CBoolean(arg1 < arg2, t);
@@ -858,6 +873,9 @@ public class BasicLogic {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+            if (args[0] instanceof CInt && args[1] instanceof CInt) {
+                return new CBoolean(((CInt) args[0]).getInt() > ((CInt) args[1]).getInt(), t);
+            }
             double arg1 = Static.getNumber(args[0]);
             double arg2 = Static.getNumber(args[1]);
             return new CBoolean(arg1 > arg2, t);
@@ -913,6 +931,9 @@ public class BasicLogic {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+            if (args[0] instanceof CInt && args[1] instanceof CInt) {
+                return new CBoolean(((CInt) args[0]).getInt() <= ((CInt) args[1]).getInt(), t);
+            }
             double arg1 = Static.getNumber(args[0]);
             double arg2 = Static.getNumber(args[1]);
             return new CBoolean(arg1 <= arg2, t);
@@ -968,6 +989,9 @@ public class BasicLogic {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+            if (args[0] instanceof CInt && args[1] instanceof CInt) {
+                return new CBoolean(((CInt) args[0]).getInt() >= ((CInt) args[1]).getInt(), t);
+            }
             double arg1 = Static.getNumber(args[0]);
             double arg2 = Static.getNumber(args[1]);
             return new CBoolean(arg1 >= arg2, t);
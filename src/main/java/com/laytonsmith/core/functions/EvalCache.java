@@ -0,0 +1,125 @@
+package com.laytonsmith.core.functions;
+
+import com.laytonsmith.core.CHLog;
+import com.laytonsmith.core.GenericTreeNode;
+import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.Prefs;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the compiled trees of code passed to eval, so code that is eval'd over and
+ * over only needs to be compiled once. The cache is bounded, and once it holds more
+ * than eval-cache-size entries, the ones that were used least recently are dropped.
+ * Since the file is part of each target in the tree, entries are keyed by both the
+ * source and the file the eval was run from.
+ * <p>
+ * This may be used from several threads at once. Like IncludeCache, the lock is not
+ * held while compiling.
+ * @author Layton
+ */
+public class EvalCache {
+
+    private static class Key {
+
+        final String source;
+        final File file;
+
+        Key(String source, File file) {
+            this.source = source;
+            this.file = file;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return source.equals(other.source) && (file == null ? other.file == null : file.equals(other.file));
+        }
+
+        @Override
+        public int hashCode() {
+            return source.hashCode() * 31 + (file == null ? 0 : file.hashCode());
+        }
+    }
+    private static final Map<Key, GenericTreeNode<Construct>> cache = new LinkedHashMap<Key, GenericTreeNode<Construct>>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, GenericTreeNode<Construct>> eldest) {
+            return size() > java.lang.Math.max(0, Prefs.EvalCacheSize());
+        }
+    };
+    private static long hits = 0;
+    private static long misses = 0;
+
+    private static synchronized GenericTreeNode<Construct> lookup(Key key) {
+        GenericTreeNode<Construct> tree = cache.get(key);
+        if (tree == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return tree;
+    }
+
+    private static synchronized void add(Key key, GenericTreeNode<Construct> tree) {
+        cache.put(key, tree);
+    }
+
+    /**
+     * Returns the compiled form of the given code, compiling it first if it isn't
+     * already cached.
+     * @param source
+     * @param t
+     * @return
+     * @throws ConfigCompileException
+     */
+    public static GenericTreeNode<Construct> get(String source, Target t) throws ConfigCompileException {
+        Key key = new Key(source, t.file());
+        GenericTreeNode<Construct> tree = lookup(key);
+        if (tree == null) {
+            tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(source, t.file()));
+            add(key, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Returns the number of evals that were able to use a cached tree.
+     * @return
+     */
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of evals that had to compile their code.
+     * @return
+     */
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of trees currently cached.
+     * @return
+     */
+    public static synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Empties the cache. The hit and miss counts are kept, since they're meant to
+     * show how well the cache does over time.
+     */
+    public static synchronized void clearCache() {
+        CHLog.Log(CHLog.Tags.META, CHLog.Level.INFO, "Clearing eval cache", Target.UNKNOWN);
+        cache.clear();
+    }
+}
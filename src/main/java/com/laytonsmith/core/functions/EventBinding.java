@@ -84,7 +84,7 @@ public class EventBinding {
                     throw new ConfigRuntimeException("The custom parameters must be ivariables", ExceptionType.CastException, t);
                 }
                 IVariable cur = (IVariable)var;
-                ((IVariable)var).setIval(env.GetVarList().get(cur.getName(), cur.getTarget()).ival());
+                ((IVariable)var).setIval(env.GetVarList().get(cur).ival());
                 custom_params.set((IVariable)var);
             }
             Env newEnv = env;
@@ -451,6 +451,10 @@ public class EventBinding {
             if(!active.isLocked(parameter)){
                 try{
                     success = e.modifyEvent(parameter, value, environment.GetEvent().getUnderlyingEvent());
+                    if(success){
+                        //Later handlers should see the modified event
+                        active.invalidateParsedEvent();
+                    }
                 } catch(ConfigRuntimeException ex){
                     ex.setFile(t.file());
                     ex.setLineNum(t.line());
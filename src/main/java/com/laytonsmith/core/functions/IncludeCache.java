@@ -8,6 +8,7 @@ import com.laytonsmith.PureUtilities.ZipReader;
 import com.laytonsmith.core.CHLog;
 import com.laytonsmith.core.GenericTreeNode;
 import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.Prefs;
 import com.laytonsmith.core.Security;
 import com.laytonsmith.core.constructs.Construct;
 import com.laytonsmith.core.constructs.Target;
@@ -16,50 +17,186 @@ import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
- *
+ * Holds the compiled trees of included files, so they only need to be compiled once.
+ * The cache is bounded, and once it holds more than include-cache-size files, the ones
+ * that were used least recently are dropped, and compiled again if they are needed.
+ * When a cached file is used, its modification time is checked (at most once a second),
+ * and if the file has been edited, it is compiled again, so edits show up without a reload.
+ * <p>
+ * This may be used from several threads at once. The lock is not held while a file is
+ * compiled, so a slow compile doesn't hold up includes of other files.
  * @author Layton
  */
 public class IncludeCache {
     private static final CHLog.Tags TAG = CHLog.Tags.INCLUDES;
-    private static HashMap<File, GenericTreeNode<Construct>> cache = new HashMap<File, GenericTreeNode<Construct>>();
+    /**
+     * How often the file behind a cached include is checked for changes, in ms
+     */
+    private static final long CHECK_INTERVAL = 1000;
     
-    private static void add(File file, GenericTreeNode<Construct> tree){
-        cache.put(file, tree);
+    private static class CachedInclude {
+        final GenericTreeNode<Construct> tree;
+        final long modified;
+        long checked;
+        
+        CachedInclude(GenericTreeNode<Construct> tree, long modified){
+            this.tree = tree;
+            this.modified = modified;
+            this.checked = System.currentTimeMillis();
+        }
     }
     
-    public static GenericTreeNode<Construct> get(File file, Target t){
-        CHLog.Log(TAG, CHLog.Level.DEBUG, "Loading " + file.getAbsolutePath(), t);
-        if(!cache.containsKey(file)){
-            CHLog.Log(TAG, CHLog.Level.VERBOSE, "Cache does not already contain include file, compiling, then caching.", t);
-            //We have to pull the file from the FS, and compile it.
-            if(Security.CheckSecurity(file.getAbsolutePath())){
-                CHLog.Log(TAG, CHLog.Level.VERBOSE, "Security check passed", t);
-                try {
-                    String s = new ZipReader(file).getFileContents();
-                    GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("g(\n" + s + "\n)", file));
-                    CHLog.Log(TAG, CHLog.Level.VERBOSE, "Compilation succeeded, adding to cache.", t);
-                    IncludeCache.add(file, tree);
-                } catch (ConfigCompileException ex) {
-                    throw new ConfigRuntimeException("There was a compile error when trying to include the script at " + file
-                            + "\n" + ex.getMessage() + " :: " + file.getName() + ":" + ex.getLineNum(), 
-                            Exceptions.ExceptionType.IncludeException, t);
-                } catch (IOException ex) {
-                    throw new ConfigRuntimeException("The script at " + file + " could not be found or read in.", 
-                            Exceptions.ExceptionType.IOException, t);
+    private static final Map<File, CachedInclude> cache = new LinkedHashMap<File, CachedInclude>(16, 0.75f, true){
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, CachedInclude> eldest) {
+            return size() > java.lang.Math.max(1, Prefs.IncludeCacheSize());
+        }
+        
+    };
+    /**
+     * The last modified time of each file that has been included, as of the last
+     * reload. Unlike the cache, this is not bounded, but it's only a number per file.
+     */
+    private static Map<File, Long> modified = new HashMap<File, Long>();
+    /**
+     * The ms files that included each file while they were run
+     */
+    private static Map<File, Set<File>> dependents = new HashMap<File, Set<File>>();
+    
+    private static synchronized void add(File file, CachedInclude entry){
+        cache.put(file, entry);
+        if(!modified.containsKey(file)){
+            modified.put(file, entry.modified);
+        }
+    }
+    
+    /**
+     * Returns the cached tree, if it is cached and the file hasn't changed since.
+     */
+    private static synchronized GenericTreeNode<Construct> lookup(File file){
+        CachedInclude entry = cache.get(file);
+        if(entry == null){
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if(now - entry.checked >= CHECK_INTERVAL){
+            entry.checked = now;
+            if(file.lastModified() != entry.modified){
+                cache.remove(file);
+                return null;
+            }
+        }
+        return entry.tree;
+    }
+    
+    /**
+     * Records that the specified ms file included this file. If source is null,
+     * nothing is recorded.
+     * @param file
+     * @param source 
+     */
+    public static synchronized void addDependent(File file, File source){
+        if(source == null){
+            return;
+        }
+        if(!dependents.containsKey(file)){
+            dependents.put(file, new HashSet<File>());
+        }
+        dependents.get(file).add(source);
+    }
+    
+    /**
+     * Returns the included files that have been modified since the last time this was
+     * called (or since they were first included), and removes any stale copies of them
+     * from the cache.
+     * @return 
+     */
+    public static synchronized Set<File> invalidateChanged(){
+        Set<File> changed = new HashSet<File>();
+        for(Map.Entry<File, Long> e : modified.entrySet()){
+            long lastModified = e.getKey().lastModified();
+            if(lastModified != e.getValue()){
+                changed.add(e.getKey());
+                e.setValue(lastModified);
+                CachedInclude entry = cache.get(e.getKey());
+                if(entry != null && entry.modified != lastModified){
+                    cache.remove(e.getKey());
                 }
-            } else {
-                throw new ConfigRuntimeException("The script cannot access " + file + " due to restrictions imposed by the base-dir setting.", 
-                        Exceptions.ExceptionType.SecurityException, t);
             }
         }
-        CHLog.Log(TAG, CHLog.Level.INFO, "Returning " + file.getAbsolutePath() + " from cache", t);
-        return cache.get(file);
+        if(!changed.isEmpty()){
+            CHLog.Log(TAG, CHLog.Level.INFO, "Invalidated " + changed.size() + " changed include(s)", Target.UNKNOWN);
+        }
+        return changed;
+    }
+    
+    /**
+     * Returns the ms files that included any of the specified files.
+     * @param files
+     * @return 
+     */
+    public static synchronized Set<File> getDependents(Set<File> files){
+        Set<File> ret = new HashSet<File>();
+        for(File f : files){
+            if(dependents.containsKey(f)){
+                ret.addAll(dependents.get(f));
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * Returns the compiled include, compiling it first if it isn't already cached, or
+     * the file has changed since it was cached.
+     * @param file
+     * @param t
+     * @return 
+     */
+    public static GenericTreeNode<Construct> get(File file, Target t){
+        GenericTreeNode<Construct> tree = lookup(file);
+        if(tree != null){
+            if(CHLog.WillLog(TAG, CHLog.Level.INFO)){
+                CHLog.Log(TAG, CHLog.Level.INFO, "Returning " + file.getAbsolutePath() + " from cache", t);
+            }
+            return tree;
+        }
+        if(CHLog.WillLog(TAG, CHLog.Level.VERBOSE)){
+            CHLog.Log(TAG, CHLog.Level.VERBOSE, "Cache does not contain " + file.getAbsolutePath() + ", or it has changed, compiling, then caching.", t);
+        }
+        //We have to pull the file from the FS, and compile it.
+        if(Security.CheckSecurity(file.getAbsolutePath())){
+            try {
+                //Get the time first, so if it's edited while we're compiling, we'll notice next time
+                long lastModified = file.lastModified();
+                String s = new ZipReader(file).getFileContents();
+                tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("g(\n" + s + "\n)", file));
+                IncludeCache.add(file, new CachedInclude(tree, lastModified));
+                return tree;
+            } catch (ConfigCompileException ex) {
+                throw new ConfigRuntimeException("There was a compile error when trying to include the script at " + file
+                        + "\n" + ex.getMessage() + " :: " + file.getName() + ":" + ex.getLineNum(), 
+                        Exceptions.ExceptionType.IncludeException, t);
+            } catch (IOException ex) {
+                throw new ConfigRuntimeException("The script at " + file + " could not be found or read in.", 
+                        Exceptions.ExceptionType.IOException, t);
+            }
+        } else {
+            throw new ConfigRuntimeException("The script cannot access " + file + " due to restrictions imposed by the base-dir setting.", 
+                    Exceptions.ExceptionType.SecurityException, t);
+        }
     }
     
-    public static void clearCache(){
+    public static synchronized void clearCache(){
         CHLog.Log(TAG, CHLog.Level.INFO, "Clearing include cache", Target.UNKNOWN);
         cache.clear();
+        modified.clear();
+        dependents.clear();
     }
 }
@@ -39,6 +39,13 @@ public class Math {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+            if(Static.allInts(args)){
+                long tally = ((CInt)args[0]).getInt();
+                for(int i = 1; i < args.length; i++){
+                    tally += ((CInt)args[i]).getInt();
+                }
+                return new CInt(tally, t);
+            }
             double tally = Static.getNumber(args[0]);
             for(int i = 1; i < args.length; i++){
                 tally += Static.getNumber(args[i]);
@@ -94,6 +101,13 @@ public class Math {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+            if(Static.allInts(args)){
+                long tally = ((CInt)args[0]).getInt();
+                for(int i = 1; i < args.length; i++){
+                    tally -= ((CInt)args[i]).getInt();
+                }
+                return new CInt(tally, t);
+            }
             double tally = Static.getNumber(args[0]);
             for(int i = 1; i < args.length; i++){
                 tally -= Static.getNumber(args[i]);
@@ -151,6 +165,13 @@ public class Math {
         }
 
         public Construct exec(Target t, Env env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+            if(Static.allInts(args)){
+                long tally = ((CInt)args[0]).getInt();
+                for(int i = 1; i < args.length; i++){
+                    tally *= ((CInt)args[i]).getInt();
+                }
+                return new CInt(tally, t);
+            }
             double tally = Static.getNumber(args[0]);
             for(int i = 1; i < args.length; i++){
                 tally *= Static.getNumber(args[i]);
@@ -373,13 +394,13 @@ public class Math {
             if(args.length == 2){
                 if(args[1] instanceof IVariable){
                     IVariable cur2 = (IVariable)args[1];
-                    args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                    args[1] = env.GetVarList().get(cur2);
                 }
                 value = Static.getInt(args[1]);
             }
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                IVariable v = env.GetVarList().get(cur);
                 Construct newVal;
                 if(Static.anyDoubles(v.ival())){
                     newVal = new CDouble(Static.getDouble(v.ival()) + value, t);
@@ -451,13 +472,13 @@ public class Math {
             if(args.length == 2){
                 if(args[1] instanceof IVariable){
                     IVariable cur2 = (IVariable)args[1];
-                    args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                    args[1] = env.GetVarList().get(cur2);
                 }
                 value = Static.getInt(args[1]);
             }
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                IVariable v = env.GetVarList().get(cur);
                 Construct newVal;
                 if(Static.anyDoubles(v.ival())){
                     newVal = new CDouble(Static.getDouble(v.ival()) + value, t);
@@ -535,13 +556,13 @@ public class Math {
             if(args.length == 2){
                 if(args[1] instanceof IVariable){
                     IVariable cur2 = (IVariable)args[1];
-                    args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                    args[1] = env.GetVarList().get(cur2);
                 }
                 value = Static.getInt(args[1]);
             }
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                IVariable v = env.GetVarList().get(cur);
                 Construct newVal;
                 if(Static.anyDoubles(v.ival())){
                     newVal = new CDouble(Static.getDouble(v.ival()) - value, t);
@@ -612,13 +633,13 @@ public class Math {
             if(args.length == 2){
                 if(args[1] instanceof IVariable){
                     IVariable cur2 = (IVariable)args[1];
-                    args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                    args[1] = env.GetVarList().get(cur2);
                 }
                 value = Static.getInt(args[1]);
             }
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                IVariable v = env.GetVarList().get(cur);
                 Construct newVal;
                 if(Static.anyDoubles(v.ival())){
                     newVal = new CDouble(Static.getDouble(v.ival()) - value, t);
@@ -285,7 +285,7 @@ public class Meta {
 
         public String docs() {
             return "string {script_string} Executes arbitrary MethodScript. Note that this function is very experimental, and is subject to changing or "
-                    + "removal.";
+                    + "removal. The compiled code is cached (see eval_cache_stats()), so eval'ing the same string repeatedly only costs running it.";
         }
 
         public ExceptionType[] thrown() {
@@ -312,7 +312,7 @@ public class Meta {
             GenericTreeNode<Construct> node = nodes[0];
             try{
                 Construct script = parent.seval(node, env);
-                GenericTreeNode<Construct> root = MethodScriptCompiler.compile(MethodScriptCompiler.lex(script.val(), t.file()));
+                GenericTreeNode<Construct> root = EvalCache.get(script.val(), t);
                 StringBuilder b = new StringBuilder();
                 int count = 0;
                 for (GenericTreeNode<Construct> child : root.getChildren()) {
@@ -346,6 +346,57 @@ public class Meta {
         }
     }
 
+    @api
+    public static class eval_cache_stats extends AbstractFunction {
+
+        public String getName() {
+            return "eval_cache_stats";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0};
+        }
+
+        public String docs() {
+            return "array {} Returns an associative array with information about the cache eval() uses to avoid compiling the same code"
+                    + " repeatedly: hits is the number of evals that used cached code, misses is the number that had to compile it,"
+                    + " size is the number of pieces of code cached right now, and max is the most that will be cached, which is set"
+                    + " with the eval-cache-size preference. The cache is emptied when aliases are reloaded, but the counts are not reset.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{};
+        }
+
+        public boolean isRestricted() {
+            return true;
+        }
+
+        public void varList(IVariableList varList) {
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env env, Construct... args) throws ConfigRuntimeException {
+            CArray ret = new CArray(t);
+            ret.set("hits", new CInt(EvalCache.getHits(), t));
+            ret.set("misses", new CInt(EvalCache.getMisses(), t));
+            ret.set("size", new CInt(EvalCache.size(), t));
+            ret.set("max", new CInt(Prefs.EvalCacheSize(), t));
+            return ret;
+        }
+    }
+
     @api
     public static class call_alias extends AbstractFunction {
 
@@ -5,12 +5,17 @@
 package com.laytonsmith.core.functions;
 
 import com.laytonsmith.core.*;
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CBoolean;
+import com.laytonsmith.core.constructs.CDouble;
+import com.laytonsmith.core.constructs.CInt;
 import com.laytonsmith.core.constructs.CVoid;
 import com.laytonsmith.core.constructs.Construct;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import java.io.IOException;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.perf4j.StopWatch;
@@ -35,6 +40,12 @@ public class Performance {
         }
     }
     
+    private static void RequireProfiling(Target t){
+        if(!Prefs.AllowProfiling()){
+            throw new ConfigRuntimeException("allow-profiling is currently off, you must set it to true in your preferences.", ExceptionType.SecurityException, t);
+        }
+    }
+    
     @api public static class enable_performance_logging extends AbstractFunction{
 
         public String getName() {
@@ -82,4 +93,221 @@ public class Performance {
         }
         
     }
+    
+    @api public static class enable_profiler extends AbstractFunction{
+
+        public String getName() {
+            return "enable_profiler";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{1};
+        }
+
+        public String docs() {
+            return "void {boolean} Turns the built in profiler on or off. While it's on, it counts the calls to each function, procedure,"
+                    + " alias and bound event, and how long they took, both in total, and by themselves, not counting the time spent in"
+                    + " the profiled things they called. Use get_profiler_data() or dump_profiler() to see the results. Turning it off"
+                    + " keeps what has been recorded so far; use reset_profiler() to clear it. The allow-profiling option must be set to"
+                    + " true in your preferences file, otherwise a SecurityException is thrown. The profiler can also be controlled from"
+                    + " the console, with /commandhelper profiler <on|off|reset|dump>.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.SecurityException};
+        }
+
+        public boolean isRestricted() {
+            return true;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            RequireProfiling(t);
+            Profiler.SetEnabled(Static.getBoolean(args[0]));
+            return new CVoid(t);
+        }
+        
+    }
+    
+    @api public static class reset_profiler extends AbstractFunction{
+
+        public String getName() {
+            return "reset_profiler";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0};
+        }
+
+        public String docs() {
+            return "void {} Throws away everything the profiler has recorded so far. This doesn't turn the profiler on or off."
+                    + " The allow-profiling option must be set to true in your preferences file, otherwise a SecurityException is thrown.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.SecurityException};
+        }
+
+        public boolean isRestricted() {
+            return true;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            RequireProfiling(t);
+            Profiler.Reset();
+            return new CVoid(t);
+        }
+        
+    }
+    
+    @api public static class get_profiler_data extends AbstractFunction{
+
+        public String getName() {
+            return "get_profiler_data";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0, 1};
+        }
+
+        public String docs() {
+            return "array {[limit]} Returns what the profiler has recorded, as an associative array with the keys function, procedure,"
+                    + " alias and event. Each of those is an array of the things of that kind that were called, sorted so the ones that"
+                    + " took the most time by themselves come first, and limited to the first limit entries, if limit is given. Each"
+                    + " entry is an associative array with the keys name, calls, total and self, which are in ms, and histogram, an"
+                    + " array where index i is the number of calls that took less than 2^i microseconds (and at least 2^(i-1)), except"
+                    + " for the last index, which counts all the calls longer than that. The allow-profiling option must be set to true"
+                    + " in your preferences file, otherwise a SecurityException is thrown.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.SecurityException, ExceptionType.CastException};
+        }
+
+        public boolean isRestricted() {
+            return true;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            RequireProfiling(t);
+            long limit = Long.MAX_VALUE;
+            if(args.length == 1){
+                limit = Static.getInt(args[0]);
+            }
+            CArray ret = new CArray(t);
+            for(Profiler.Kind kind : Profiler.Kind.values()){
+                CArray entries = new CArray(t);
+                int count = 0;
+                for(Map.Entry<String, Profiler.Stat> e : Profiler.GetStats(kind)){
+                    if(count++ >= limit){
+                        break;
+                    }
+                    Profiler.Stat s = e.getValue();
+                    CArray entry = new CArray(t);
+                    entry.set("name", e.getKey());
+                    entry.set("calls", new CInt(s.getCalls(), t));
+                    entry.set("total", new CDouble(s.getTotal() / 1000000.0, t));
+                    entry.set("self", new CDouble(s.getSelf() / 1000000.0, t));
+                    CArray histogram = new CArray(t);
+                    for(int i = 0; i < Profiler.BUCKETS; i++){
+                        histogram.push(new CInt(s.getBucket(i), t));
+                    }
+                    entry.set("histogram", histogram);
+                    entries.push(entry);
+                }
+                ret.set(kind.toString(), entries);
+            }
+            ret.set("enabled", new CBoolean(Profiler.Enabled(), t));
+            return ret;
+        }
+        
+    }
+    
+    @api public static class dump_profiler extends AbstractFunction{
+
+        public String getName() {
+            return "dump_profiler";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0, 1};
+        }
+
+        public String docs() {
+            return "void {[limit]} Writes a report of what the profiler has recorded to the profiling log file, listing the"
+                    + " top limit (default 20) functions, procedures, aliases and events, by the time they took by themselves."
+                    + " The allow-profiling option must be set to true in your preferences file, otherwise a SecurityException is thrown.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{ExceptionType.SecurityException, ExceptionType.CastException, ExceptionType.IOException};
+        }
+
+        public boolean isRestricted() {
+            return true;
+        }
+
+        public boolean preResolveVariables() {
+            return true;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            RequireProfiling(t);
+            int limit = 20;
+            if(args.length == 1){
+                limit = (int)Static.getInt(args[0]);
+            }
+            try {
+                Profiler.Dump(limit);
+            } catch (IOException ex) {
+                throw new ConfigRuntimeException("Could not write the profiler report: " + ex.getMessage(), ExceptionType.IOException, t);
+            }
+            return new CVoid(t);
+        }
+        
+    }
 }
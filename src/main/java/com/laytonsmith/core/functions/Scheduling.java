@@ -11,7 +11,12 @@ import com.laytonsmith.core.exceptions.CancelCommandException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.exceptions.ProgramFlowManipulationException;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -20,8 +25,41 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class Scheduling {
     
     
+    /**
+     * The ms file that scheduled each task, for the tasks that were scheduled while
+     * running an ms file. Timeouts in the async lane remove themselves from a worker
+     * thread, so this is synchronized.
+     */
+    private static final Map<Integer, File> taskSources = Collections.synchronizedMap(new HashMap<Integer, File>());
+    
     public static void ClearScheduledRunners(){
         StaticLayer.ClearAllRunnables();
+        TaskScheduler.CancelAll();
+        AsyncExecutor.RunnablesCleared();
+        taskSources.clear();
+    }
+    
+    /**
+     * Cancels only the tasks that were scheduled by running one of the specified ms files.
+     * @param sources 
+     */
+    public static void ClearScheduledRunners(Set<File> sources){
+        synchronized(taskSources){
+            Iterator<Map.Entry<Integer, File>> it = taskSources.entrySet().iterator();
+            while(it.hasNext()){
+                Map.Entry<Integer, File> e = it.next();
+                if(sources.contains(e.getValue())){
+                    TaskScheduler.Cancel(e.getKey());
+                    it.remove();
+                }
+            }
+        }
+    }
+    
+    private static void setSource(int id, Env env){
+        if(env.GetSourceFile() != null){
+            taskSources.put(id, env.GetSourceFile());
+        }
     }
     
     public static String docs(){
@@ -181,16 +219,21 @@ public class Scheduling {
         }
 
         public Integer[] numArgs() {
-            return new Integer[]{2, 3};
+            return new Integer[]{2, 3, 4};
         }
 
         public String docs() {
-            return "int {timeInMS, [initialDelayInMS,] closure} Sets a task to run every so often. This works similarly to set_timeout,"
+            return "int {timeInMS, [initialDelayInMS,] closure, [async]} Sets a task to run every so often. This works similarly to set_timeout,"
                     + " except the task will automatically re-register itself to run again. Note that the resolution"
                     + " of the time is in ms, however, the server will only have a resolution of up to 50 ms, meaning"
                     + " that a time of 1-50ms is essentially the same as 50ms. The inital delay defaults to the same"
                     + " thing as timeInMS, that is, there will be a pause between registration and initial firing. However,"
-                    + " this can be set to 0 (or some other number) to adjust how long of a delay there is before it begins.";
+                    + " this can be set to 0 (or some other number) to adjust how long of a delay there is before it begins."
+                    + " Tasks run on the main server thread, and each tick only spends scheduler-tick-budget ms running them, so if"
+                    + " lots of tasks come due at once, some of them may run a tick or two late. If async is true, the task is run"
+                    + " on a worker thread instead, and any functions in it that need the main thread are passed back to it. Only"
+                    + " do this if the closure doesn't share any arrays or variables with other code. An async interval isn't run"
+                    + " again while its last run is still going.";
         }
 
         public ExceptionType[] thrown() {
@@ -213,7 +256,7 @@ public class Scheduling {
             long time = Static.getInt(args[0]);
             int offset = 0;
             long delay = time;
-            if(args.length == 3){
+            if(args.length == 4 || (args.length == 3 && !(args[1] instanceof CClosure))){
                 offset = 1;
                 delay = Static.getInt(args[1]);
             }            
@@ -221,11 +264,17 @@ public class Scheduling {
                 throw new ConfigRuntimeException(getName() + " expects a closure to be sent as the second argument", ExceptionType.CastException, t);
             }
             final CClosure c = (CClosure) args[1 + offset];     
-            final AtomicInteger ret = new AtomicInteger(-1);
-            
-            ret.set(StaticLayer.SetFutureRepeater(time, delay, new Runnable(){
+            boolean async = false;
+            if(args.length > 2 + offset){
+                async = Static.getBoolean(args[2 + offset]);
+            }
+            //The id has to be known before the task is queued, since the scheduler
+            //could run it before Schedule returns
+            final int id = TaskScheduler.NewId();
+            setSource(id, environment);
+            TaskScheduler.Schedule(id, delay, java.lang.Math.max(1, time), async, new Runnable(){
                public void run(){
-                   c.getEnv().SetCustom("timeout-id", ret.get());
+                   c.getEnv().SetCustom("timeout-id", id);
                    try{
                        c.execute(null);
                    } catch(ConfigRuntimeException e){
@@ -236,8 +285,8 @@ public class Scheduling {
                        ConfigRuntimeException.DoWarning("Using a program flow manipulation construct improperly! " + e.getClass().getSimpleName());
                    }
                } 
-            }));
-            return new CInt(ret.get(), t);
+            });
+            return new CInt(id, t);
         }
 
         public CHVersion since() {
@@ -253,14 +302,15 @@ public class Scheduling {
         }
 
         public Integer[] numArgs() {
-            return new Integer[]{2};
+            return new Integer[]{2, 3};
         }
 
         public String docs() {
-            return "int {timeInMS, closure} Sets a task to run in the specified number of ms in the future."
+            return "int {timeInMS, closure, [async]} Sets a task to run in the specified number of ms in the future."
                     + " The task will only run once. Note that the resolution"
                     + " of the time is in ms, however, the server will only have a resolution of up to 50 ms, meaning"
-                    + " that a time of 1-50ms is essentially the same as 50ms.";
+                    + " that a time of 1-50ms is essentially the same as 50ms. As with set_interval, the task runs on the main"
+                    + " server thread, within the scheduler-tick-budget, unless async is true, in which case it's run on a worker thread.";
         }
 
         public ExceptionType[] thrown() {
@@ -285,10 +335,16 @@ public class Scheduling {
                 throw new ConfigRuntimeException(getName() + " expects a closure to be sent as the second argument", ExceptionType.CastException, t);
             }
             final CClosure c = (CClosure) args[1];     
-            final AtomicInteger ret = new AtomicInteger(-1);
-            ret.set(StaticLayer.SetFutureRunnable(time, new Runnable(){
+            boolean async = false;
+            if(args.length == 3){
+                async = Static.getBoolean(args[2]);
+            }
+            final int id = TaskScheduler.NewId();
+            setSource(id, environment);
+            TaskScheduler.Schedule(id, time, 0, async, new Runnable(){
                public void run(){
-                   c.getEnv().SetCustom("timeout-id", ret.get());
+                   taskSources.remove(id);
+                   c.getEnv().SetCustom("timeout-id", id);
                    try{
                        c.execute(null);
                    } catch(ConfigRuntimeException e){
@@ -299,8 +355,8 @@ public class Scheduling {
                        ConfigRuntimeException.DoWarning("Using a program flow manipulation construct improperly! " + e.getClass().getSimpleName());
                    }
                } 
-            }));
-            return new CInt(ret.get(), t);
+            });
+            return new CInt(id, t);
         }
 
         public CHVersion since() {
@@ -348,9 +404,11 @@ public class Scheduling {
 
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             if(args.length == 0 && environment.GetCustom("timeout-id") != null){
-                StaticLayer.ClearFutureRunnable((Integer)environment.GetCustom("timeout-id"));
+                TaskScheduler.Cancel((Integer)environment.GetCustom("timeout-id"));
+                taskSources.remove((Integer)environment.GetCustom("timeout-id"));
             } else if(args.length == 1){
-                StaticLayer.ClearFutureRunnable((int)Static.getInt(args[0]));
+                TaskScheduler.Cancel((int)Static.getInt(args[0]));
+                taskSources.remove((int)Static.getInt(args[0]));
             } else {
                 throw new ConfigRuntimeException("No id was passed to clear_task, and it's not running inside a task either.", ExceptionType.InsufficientArgumentsException, t);
             }
@@ -0,0 +1,21 @@
+package com.laytonsmith.core.natives.interfaces;
+
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import java.util.Iterator;
+
+/**
+ * Things that implement this can be walked through in order, for instance by
+ * foreach. The iterator should not need to copy the whole sequence up front, and
+ * should keep working if the sequence is changed while it is being walked through;
+ * elements added past the current position are reached, and removed ones are skipped.
+ * @author Layton
+ */
+public interface Sequence extends Mixed {
+    /**
+     * Returns an iterator over the values in this sequence.
+     * @param t The target to give any values that have to be created
+     * @return 
+     */
+    public Iterator<Construct> iterator(Target t);
+}
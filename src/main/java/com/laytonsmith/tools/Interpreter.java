@@ -4,13 +4,13 @@
  */
 package com.laytonsmith.tools;
 
-import com.laytonsmith.PureUtilities.SerializedPersistance;
 import static com.laytonsmith.PureUtilities.TermColors.*;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
 import com.laytonsmith.core.Env;
 import com.laytonsmith.core.GenericTreeNode;
 import com.laytonsmith.core.MethodScriptCompiler;
 import com.laytonsmith.core.MethodScriptComplete;
+import com.laytonsmith.core.Static;
 import com.laytonsmith.core.constructs.Token;
 import com.laytonsmith.core.exceptions.CancelCommandException;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
@@ -33,7 +33,7 @@ public class Interpreter {
         try {
             MethodScriptCompiler.execute(MethodScriptCompiler.compile(MethodScriptCompiler.lex("player()", null)), new Env(), null, null);
         } catch (ConfigCompileException ex) {}
-        CommandHelperPlugin.persist = new SerializedPersistance(new File("CommandHelper/persistance.ser"));
+        CommandHelperPlugin.persist = Static.OpenPersistance(new File("CommandHelper/persistance.ser"));
         pl(YELLOW + "You are now in cmdline interpreter mode. Type a dash (-) on a line by itself to exit, and >>> to enter"
                 + " multiline mode.\nMost Minecraft features will not work, and your working directory is the"
                 + " CommandHelper.jar directory, not the Server directory. Have fun!");
@@ -42,6 +42,12 @@ public class Interpreter {
         while(textLine(scanner.nextLine())){
             p(BLUE + ":" + WHITE);
         }
+        try {
+            //The journaled backend writes in the background, so make sure it's done before we exit
+            CommandHelperPlugin.persist.save();
+        } catch (Exception ex) {
+            pl(RED + ex.getMessage());
+        }
     }
 
     public static boolean textLine(String line) {
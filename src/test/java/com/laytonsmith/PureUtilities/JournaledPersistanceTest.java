@@ -0,0 +1,151 @@
+package com.laytonsmith.PureUtilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author layton
+ */
+public class JournaledPersistanceTest {
+    File db;
+    File journal;
+    File backup;
+    File temp;
+
+    @Before
+    public void setUp() throws IOException{
+        db = File.createTempFile("persistance", ".ser");
+        db.delete();
+        journal = new File(db.getPath() + ".journal");
+        backup = new File(db.getPath() + ".old");
+        temp = new File(db.getPath() + ".tmp");
+    }
+
+    @After
+    public void tearDown(){
+        db.delete();
+        journal.delete();
+        backup.delete();
+        temp.delete();
+    }
+
+    @Test public void testMigratesSerializedDatabase() throws Exception{
+        SerializedPersistance old = new SerializedPersistance(db);
+        old.setValue(new String[]{"storage", "a"}, "1");
+        JournaledPersistance p = new JournaledPersistance(db);
+        try{
+            assertEquals("1", p.getValue(new String[]{"storage", "a"}));
+            p.setValue(new String[]{"storage", "a"}, "2");
+        } finally {
+            p.close();
+        }
+        assertEquals("2", new SerializedPersistance(db).getValue(new String[]{"storage", "a"}));
+    }
+
+    @Test public void testReplaysJournalAndDropsTornRecord() throws Exception{
+        JournaledPersistance p = new JournaledPersistance(db);
+        try{
+            p.setValue(new String[]{"storage", "a"}, "1");
+            p.setValue(new String[]{"storage", "b"}, "2");
+            p.setValue(new String[]{"storage", "a"}, null);
+            p.save();
+        } finally {
+            p.close();
+        }
+        //Pretend we crashed part way through writing another record
+        FileOutputStream out = new FileOutputStream(journal, true);
+        out.write(new byte[]{0, 0, 0, 40, 1, 2, 3});
+        out.close();
+        JournaledPersistance recovered = new JournaledPersistance(db);
+        try{
+            assertFalse(recovered.isKeySet(new String[]{"storage", "a"}));
+            assertEquals("2", recovered.getValue(new String[]{"storage", "b"}));
+            recovered.setValue(new String[]{"storage", "c"}, "3");
+            recovered.save();
+        } finally {
+            recovered.close();
+        }
+        JournaledPersistance reopened = new JournaledPersistance(db);
+        try{
+            assertEquals("3", reopened.getValue(new String[]{"storage", "c"}));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test(timeout = 30000) public void testSaveReportsWriteFailures() throws Exception{
+        JournaledPersistance p = new JournaledPersistance(db);
+        try{
+            p.setValue(new String[]{"storage", "a"}, "1");
+            p.save();
+            //Make the journal unwritable
+            journal.delete();
+            journal.mkdir();
+            p.setValue(new String[]{"storage", "b"}, "2");
+            try{
+                p.save();
+                fail("Expected the failed write to be reported");
+            } catch(IOException e){
+                //Good
+            }
+            journal.delete();
+            //The writer keeps retrying, and catches up once it can write again
+            while(true){
+                try{
+                    p.save();
+                    break;
+                } catch(IOException e){
+                    Thread.sleep(100);
+                }
+            }
+        } finally {
+            p.close();
+        }
+        JournaledPersistance reopened = new JournaledPersistance(db);
+        try{
+            assertEquals("2", reopened.getValue(new String[]{"storage", "b"}));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test public void testFallsBackToMovedAsideSnapshot() throws Exception{
+        //As if we crashed after moving the old snapshot aside, but before the new one was in place
+        new SerializedPersistance(backup).setValue(new String[]{"storage", "a"}, "1");
+        JournaledPersistance p = new JournaledPersistance(db);
+        try{
+            assertEquals("1", p.getValue(new String[]{"storage", "a"}));
+        } finally {
+            p.close();
+        }
+    }
+
+    @Test(timeout = 30000) public void testCompactionKeepsEveryChange() throws Exception{
+        JournaledPersistance p = new JournaledPersistance(db);
+        try{
+            for(int i = 0; i < 1000; i++){
+                p.setValue(new String[]{"storage", "k" + i}, Integer.toString(i));
+            }
+            p.save();
+            p.compact();
+            //These may land before, during or after the compaction
+            for(int i = 0; i < 1000; i++){
+                p.setValue(new String[]{"storage", "k" + i}, i % 2 == 0 ? null : "changed");
+            }
+            p.save();
+        } finally {
+            p.close();
+        }
+        assertEquals(0, journal.length());
+        SerializedPersistance snapshot = new SerializedPersistance(db);
+        assertEquals(500, snapshot.getNamespaceValues(new String[]{"storage"}).size());
+        assertFalse(snapshot.isKeySet(new String[]{"storage", "k0"}));
+        assertEquals("changed", snapshot.getValue(new String[]{"storage", "k1"}));
+    }
+}
@@ -0,0 +1,130 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares namespace lookups using NamespaceIndex with the scan the persistance backends
+ * used to do, which split every key in the database on each call. get_values uses
+ * getNamespaceValues, and the namespace checks use isNamespaceSet. (has_value itself
+ * only checks a single key, which was always a hash lookup.) This isn't a unit test, so
+ * it isn't run with the rest of the tests; run it directly, optionally passing the number
+ * of keys to generate.
+ * @author layton
+ */
+public class NamespaceIndexBenchmark {
+
+    private static final int KEYS_PER_NAMESPACE = 20;
+
+    /**
+     * getNamespaceValues, as it was before the index.
+     */
+    private static List<Map.Entry<String, Object>> scanValues(Map<String, Object> data, String m) {
+        List<Map.Entry<String, Object>> matches = new ArrayList<Map.Entry<String, Object>>();
+        String[] partialKey = m.split("\\.");
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            String[] namespace = entry.getKey().split("\\.");
+            boolean match = true;
+            for (int k = 0; k < partialKey.length; k++) {
+                if (namespace.length < partialKey.length) {
+                    match = false;
+                    continue;
+                }
+                if (!namespace[k].equals(partialKey[k])) {
+                    match = false;
+                    continue;
+                }
+            }
+            if (match) {
+                matches.add(entry);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * isNamespaceSet, as it was before the index, except that it stops at the first
+     * segment that doesn't match, where the original could throw on short keys.
+     */
+    private static boolean scanIsSet(Map<String, Object> data, String m) {
+        String[] partialKey = m.split("\\.");
+        for (String key : data.keySet()) {
+            String[] namespace = key.split("\\.");
+            boolean match = true;
+            for (int k = 0; k < partialKey.length; k++) {
+                if (namespace.length <= k || !namespace[k].equals(partialKey[k])) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int namespaces = keys / KEYS_PER_NAMESPACE;
+        Map<String, Object> data = new HashMap<String, Object>();
+        for (int i = 0; i < keys; i++) {
+            data.put("storage.player" + (i % namespaces) + ".key" + (i / namespaces), "value" + i);
+        }
+        NamespaceIndex index = new NamespaceIndex();
+        index.rebuild(data.keySet());
+        //A namespace that is set, and one that isn't, which is the worst case for the scan
+        String hit = "storage.player" + (namespaces / 2);
+        String miss = "storage.nobody";
+
+        int scanRuns = 5;
+        int indexRuns = 100000;
+        int found = 0;
+        //Warm up first, so we're timing the compiled code
+        for (int i = 0; i < 2; i++) {
+            found += scanValues(data, hit).size();
+            scanIsSet(data, miss);
+        }
+        for (int i = 0; i < indexRuns; i++) {
+            found += index.getKeys(hit).size();
+            index.isNamespaceSet(miss);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < scanRuns; i++) {
+            found += scanValues(data, hit).size();
+        }
+        double scanValues = (System.nanoTime() - start) / 1000.0 / scanRuns;
+        start = System.nanoTime();
+        for (int i = 0; i < scanRuns; i++) {
+            if (scanIsSet(data, miss)) {
+                found++;
+            }
+        }
+        double scanIsSet = (System.nanoTime() - start) / 1000.0 / scanRuns;
+
+        start = System.nanoTime();
+        for (int i = 0; i < indexRuns; i++) {
+            //As getNamespaceValues does, look up the value of each key found
+            for (String key : index.getKeys(hit)) {
+                if (data.get(key) != null) {
+                    found++;
+                }
+            }
+        }
+        double indexValues = (System.nanoTime() - start) / 1000.0 / indexRuns;
+        start = System.nanoTime();
+        for (int i = 0; i < indexRuns; i++) {
+            if (index.isNamespaceSet(miss)) {
+                found++;
+            }
+        }
+        double indexIsSet = (System.nanoTime() - start) / 1000.0 / indexRuns;
+
+        System.out.println(String.format("%d keys in %d namespaces (%d)", keys, namespaces, found));
+        System.out.println(String.format("getNamespaceValues: scan %.1f us, index %.2f us", scanValues, indexValues));
+        System.out.println(String.format("isNamespaceSet:     scan %.1f us, index %.2f us", scanIsSet, indexIsSet));
+    }
+}
@@ -0,0 +1,39 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author layton
+ */
+public class NamespaceIndexTest {
+    NamespaceIndex index;
+
+    @Before
+    public void setUp(){
+        index = new NamespaceIndex();
+        index.rebuild(Arrays.asList("a", "a.b", "a.b.c", "a.bc", "a/b", "b.a"));
+    }
+
+    @Test public void testOnlyFullSegmentsMatch(){
+        assertEquals(Arrays.asList("a.b", "a.b.c"), index.getKeys("a.b"));
+        assertEquals(Arrays.asList("a", "a.b", "a.b.c", "a.bc"), index.getKeys("a"));
+        assertTrue(index.getKeys("a.b.c.d").isEmpty());
+    }
+
+    @Test public void testTrailingPeriodsAreIgnored(){
+        assertEquals(index.getKeys("a.b"), index.getKeys("a.b."));
+        assertEquals(6, index.getKeys("..").size());
+    }
+
+    @Test public void testIsNamespaceSet(){
+        assertTrue(index.isNamespaceSet("b"));
+        assertTrue(index.isNamespaceSet("a.b.c"));
+        assertFalse(index.isNamespaceSet("a.c"));
+        index.remove("b.a");
+        assertFalse(index.isNamespaceSet("b"));
+    }
+}
@@ -0,0 +1,194 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.events.BoundEvent;
+import com.laytonsmith.core.events.Driver;
+import com.laytonsmith.core.events.EventUtils;
+import com.laytonsmith.core.functions.IncludeCache;
+import com.laytonsmith.testing.StaticTest;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import static org.mockito.Mockito.when;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Tests for reloading the scripts, mostly the incremental reload.
+ * @author Layton
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(CommandHelperPlugin.class)
+public class AliasCoreTest {
+
+    File dir;
+    File aux;
+    File config;
+    File main;
+    AliasCore ac;
+
+    @Before
+    public void setUp() throws Exception {
+        StaticTest.InstallFakeConvertor(StaticTest.GetOnlinePlayer());
+        dir = File.createTempFile("alias-core", "test");
+        dir.delete();
+        dir.mkdir();
+        aux = new File(dir, "LocalPackages");
+        aux.mkdir();
+        config = new File(dir, "config.txt");
+        main = new File(dir, "main.ms");
+        write(config, "/first = msg('first')\n");
+        write(main, "# Nothing to do\n");
+        ac = new AliasCore(config, aux, new File(dir, "preferences.txt"), main, null, null);
+        PowerMockito.mockStatic(CommandHelperPlugin.class);
+        when(CommandHelperPlugin.getCore()).thenReturn(ac);
+    }
+
+    @After
+    public void tearDown() {
+        EventUtils.UnregisterAll();
+        TaskScheduler.CancelAll();
+        IncludeCache.clearCache();
+        delete(dir);
+    }
+
+    private static void write(File f, String contents) throws Exception {
+        f.getParentFile().mkdirs();
+        AliasCore.file_put_contents(f, contents, "o");
+    }
+
+    /**
+     * Rewrites the file, and makes sure its modification time changes, since
+     * includes are only checked for changes by their modification time.
+     */
+    private static void edit(File f, String contents) throws Exception {
+        long modified = f.lastModified();
+        write(f, contents);
+        f.setLastModified(modified + 10000);
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    private static String binder(String message) {
+        return "bind(player_join, null, null, @e, msg('" + message + "'))\n"
+                + "set_interval(1000000, closure(msg('" + message + "')))\n";
+    }
+
+    /**
+     * Returns the events that were bound by running the specified file.
+     */
+    private static List<BoundEvent> boundBy(File f) {
+        List<BoundEvent> ret = new ArrayList<BoundEvent>();
+        SortedSet<BoundEvent> events = EventUtils.GetEvents(Driver.PLAYER_JOIN);
+        if (events != null) {
+            for (BoundEvent b : events) {
+                if (f.equals(b.getSourceFile())) {
+                    ret.add(b);
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Test public void testUnchangedMsaKeepsScripts() throws Exception {
+        File msa = new File(aux, "aliases.msa");
+        write(msa, "/second = msg('second')\n");
+        ac.reload(null, false);
+        List<Script> before = new ArrayList<Script>(ac.scripts);
+        assertEquals(2, before.size());
+        edit(config, "/first = msg('changed')\n");
+        ac.reload(null, true);
+        //config.txt is compiled first, then the local packages
+        assertEquals(2, ac.scripts.size());
+        assertNotSame(before.get(0), ac.scripts.get(0));
+        assertSame(before.get(1), ac.scripts.get(1));
+    }
+
+    @Test public void testChangedMsIsRunAgain() throws Exception {
+        File a = new File(aux, "a.ms");
+        File b = new File(aux, "b.ms");
+        write(a, binder("a"));
+        write(b, binder("b"));
+        ac.reload(null, false);
+        List<BoundEvent> aBefore = boundBy(a);
+        List<BoundEvent> bBefore = boundBy(b);
+        assertEquals(1, aBefore.size());
+        assertEquals(1, bBefore.size());
+        assertEquals(2, TaskScheduler.Size());
+        edit(a, binder("changed"));
+        ac.reload(null, true);
+        //a's bind and interval were removed, then a was run again
+        List<BoundEvent> aAfter = boundBy(a);
+        assertEquals(1, aAfter.size());
+        assertNotSame(aBefore.get(0), aAfter.get(0));
+        assertEquals(2, TaskScheduler.Size());
+        //b wasn't touched
+        assertSame(bBefore.get(0), boundBy(b).get(0));
+    }
+
+    @Test public void testDeletedMsIsUnloaded() throws Exception {
+        File a = new File(aux, "a.ms");
+        File b = new File(aux, "b.ms");
+        write(a, binder("a"));
+        write(b, binder("b"));
+        ac.reload(null, false);
+        List<BoundEvent> aBefore = boundBy(a);
+        b.delete();
+        ac.reload(null, true);
+        assertTrue(boundBy(b).isEmpty());
+        assertEquals(1, TaskScheduler.Size());
+        assertSame(aBefore.get(0), boundBy(a).get(0));
+    }
+
+    @Test public void testEditedIncludeRerunsDependents() throws Exception {
+        File include = new File(aux, "shared.library/inc.ms");
+        File a = new File(aux, "a.ms");
+        File b = new File(aux, "b.ms");
+        write(include, "proc(_value, return(1))\n");
+        write(a, "include('shared.library/inc.ms')\n" + binder("a"));
+        write(b, binder("b"));
+        ac.reload(null, false);
+        List<BoundEvent> aBefore = boundBy(a);
+        List<BoundEvent> bBefore = boundBy(b);
+        edit(include, "proc(_value, return(2))\n");
+        ac.reload(null, true);
+        //a didn't change, but what it included did
+        assertEquals(1, boundBy(a).size());
+        assertNotSame(aBefore.get(0), boundBy(a).get(0));
+        assertSame(bBefore.get(0), boundBy(b).get(0));
+        assertEquals(2, TaskScheduler.Size());
+    }
+
+    @Test public void testAutoIncludeChangeForcesFullReload() throws Exception {
+        File autoInclude = new File(aux, "auto_include.ms");
+        File a = new File(aux, "a.ms");
+        write(autoInclude, "proc(_value, return(1))\n");
+        write(a, binder("a"));
+        ac.reload(null, false);
+        List<Script> scriptsBefore = new ArrayList<Script>(ac.scripts);
+        List<BoundEvent> aBefore = boundBy(a);
+        edit(autoInclude, "proc(_value, return(2))\n");
+        ac.reload(null, true);
+        //Nothing changed but the auto include, and yet everything was reloaded
+        assertEquals(1, ac.scripts.size());
+        assertNotSame(scriptsBefore.get(0), ac.scripts.get(0));
+        assertEquals(1, boundBy(a).size());
+        assertNotSame(aBefore.get(0), boundBy(a).get(0));
+        assertEquals(1, TaskScheduler.Size());
+    }
+}
@@ -0,0 +1,82 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.functions.EventBinding;
+import com.laytonsmith.core.functions.Math;
+import com.laytonsmith.testing.StaticTest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class AsyncExecutorTest {
+
+    @Before
+    public void setUp() throws Exception {
+        StaticTest.InstallFakeConvertor(StaticTest.GetOnlinePlayer());
+    }
+
+    @After
+    public void tearDown() {
+        AsyncExecutor.Shutdown();
+    }
+
+    @Test(timeout = 10000) public void testOnlyMainThreadFunctionsLeaveTheWorker() throws Exception {
+        final AtomicBoolean onWorker = new AtomicBoolean();
+        final AtomicBoolean addOnMain = new AtomicBoolean(true);
+        final AtomicBoolean bindOnMain = new AtomicBoolean(false);
+        final CountDownLatch done = new CountDownLatch(1);
+        assertFalse(AsyncExecutor.OnWorker());
+        assertFalse(AsyncExecutor.MustRunOnMain(new EventBinding.bind()));
+        AsyncExecutor.RunScript(new Runnable() {
+
+            public void run() {
+                onWorker.set(AsyncExecutor.OnWorker());
+                //add doesn't care which thread it's on, bind must be on the main thread
+                addOnMain.set(AsyncExecutor.MustRunOnMain(new Math.add()));
+                bindOnMain.set(AsyncExecutor.MustRunOnMain(new EventBinding.bind()));
+                done.countDown();
+            }
+        });
+        done.await();
+        assertTrue(onWorker.get());
+        assertFalse(addOnMain.get());
+        assertTrue(bindOnMain.get());
+    }
+
+    @Test(timeout = 10000) public void testMainThreadCallsAreBatched() throws Exception {
+        final int calls = 50;
+        final AtomicInteger ran = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        AsyncExecutor.RunScript(new Runnable() {
+
+            public void run() {
+                for (int i = 0; i < calls; i++) {
+                    AsyncExecutor.OnMainThread(new Callable<Object>() {
+
+                        public Object call() throws Exception {
+                            return ran.incrementAndGet();
+                        }
+                    }, null);
+                }
+                done.countDown();
+            }
+        });
+        //Act as the main thread, draining once a tick
+        int ticks = 0;
+        while (!done.await(50, TimeUnit.MILLISECONDS)) {
+            AsyncExecutor.Drain();
+            ticks++;
+        }
+        assertEquals(calls, ran.get());
+        assertTrue("Took " + ticks + " ticks", ticks < calls / 2);
+    }
+}
@@ -0,0 +1,72 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class CommandTrieTest {
+
+    private static List<Script> compile(String aliases) throws ConfigCompileException {
+        List<Script> scripts = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(aliases, null), new Env());
+        for (Script s : scripts) {
+            s.compile();
+        }
+        return scripts;
+    }
+
+    @Test public void testCandidatesKeepAliasOrder() throws ConfigCompileException {
+        List<Script> scripts = compile("/cmd $x = msg(1)\n"
+                + "/other = msg(2)\n"
+                + "/cmd sub = msg(3)\n"
+                + "/cmd sub [$y] = msg(4)\n");
+        CommandTrie trie = new CommandTrie(scripts, true);
+        List<Script> expected = new ArrayList<Script>();
+        expected.add(scripts.get(0));
+        expected.add(scripts.get(2));
+        expected.add(scripts.get(3));
+        assertEquals(expected, trie.getCandidates("/cmd sub"));
+        assertEquals(1, trie.getCandidates("/cmd nope").size());
+        assertTrue(trie.getCandidates("/missing").isEmpty());
+    }
+
+    @Test public void testCaseFolding() throws ConfigCompileException {
+        List<Script> scripts = compile("/Cmd = msg(1)\n");
+        assertTrue(new CommandTrie(scripts, true).getCandidates("/cmd").isEmpty());
+        assertEquals(1, new CommandTrie(scripts, false).getCandidates("/CMD").size());
+    }
+
+    @Test public void testAmbiguityCandidates() throws ConfigCompileException {
+        List<Script> scripts = compile("/cmd sub = msg(1)\n"
+                + "/cmd = msg(2)\n"
+                + "/cmd sub [$y] = msg(3)\n");
+        CommandTrie trie = new CommandTrie(scripts, true);
+        List<Script> candidates = trie.getCandidates(scripts.get(2));
+        assertEquals(2, candidates.size());
+        assertSame(scripts.get(0), candidates.get(0));
+    }
+
+    @Test public void testAmbiguityIsClearedOnRecheck() throws ConfigCompileException {
+        List<Script> scripts = compile("/cmd $x = msg(1)\n"
+                + "/cmd $y = msg(2)\n");
+        Script first = scripts.get(0);
+        List<Script> earlier = new ArrayList<Script>();
+        earlier.add(first);
+        first.checkAmbiguous(new ArrayList<Script>());
+        try {
+            scripts.get(1).checkAmbiguous(earlier);
+            fail("Expected the second alias to be ambiguous");
+        } catch (ConfigCompileException e) {
+            //Expected
+        }
+        assertTrue(first.uncompilable());
+        //The clashing alias is removed, and the first one is reused by the next reload
+        first.checkAmbiguous(new ArrayList<Script>());
+        assertFalse(first.uncompilable());
+    }
+}
@@ -0,0 +1,109 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class CompileCacheTest {
+
+    File dir;
+    File source;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("compile-cache", "test");
+        dir.delete();
+        dir.mkdir();
+        source = new File(dir, "aliases.msa");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static String dump(GenericTreeNode<Construct> node) {
+        StringBuilder b = new StringBuilder();
+        b.append(node.data.getClass().getSimpleName()).append("(").append(node.data.val())
+                .append("@").append(node.data.getLineNum()).append(":").append(node.data.getColumn()).append(")");
+        for (GenericTreeNode<Construct> child : node.getChildren()) {
+            b.append("[").append(dump(child)).append("]");
+        }
+        return b.toString();
+    }
+
+    @Test public void testScriptsRoundTrip() throws ConfigCompileException {
+        String aliases = "/cmd $x [$y=2] = msg(@x . $y . 1.5 . true . null)\n"
+                + "label:/other = >>>\n"
+                + "    assign(@a, array(a: 1, 2))\n"
+                + "    msg(@a[0..1])\n"
+                + "<<<\n";
+        List<Script> scripts = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(aliases, source), new Env());
+        for (Script s : scripts) {
+            s.compile();
+        }
+        CompileCache cache = new CompileCache(dir, "test");
+        assertNull(cache.getScripts(source, aliases));
+        cache.putScripts(source, aliases, scripts);
+        List<Script> cached = cache.getScripts(source, aliases);
+        assertNotNull(cached);
+        assertEquals(scripts.size(), cached.size());
+        for (int i = 0; i < scripts.size(); i++) {
+            Script s = scripts.get(i);
+            Script c = cached.get(i);
+            assertEquals(s.getLabel(), c.getLabel());
+            assertEquals(s.toString(), c.toString());
+            assertEquals(s.getCompiledLeft().toString(), c.getCompiledLeft().toString());
+            assertEquals(s.getCompiledRight().size(), c.getCompiledRight().size());
+            for (int j = 0; j < s.getCompiledRight().size(); j++) {
+                assertEquals(dump(s.getCompiledRight().get(j)), dump(c.getCompiledRight().get(j)));
+            }
+        }
+        assertTrue(cached.get(0).match("/cmd 1"));
+    }
+
+    @Test public void testChangedContentsMiss() throws ConfigCompileException {
+        String script = "msg('hi')\n";
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, source));
+        new CompileCache(dir, "test").putTree(source, script, tree);
+        assertEquals(dump(tree), dump(new CompileCache(dir, "test").getTree(source, script)));
+        assertNull(new CompileCache(dir, "test").getTree(source, "msg('bye')\n"));
+        assertNull(new CompileCache(dir, "other version").getTree(source, script));
+    }
+
+    @Test public void testPrune() throws ConfigCompileException {
+        String script = "msg('hi')\n";
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, source));
+        new CompileCache(dir, "test").putTree(source, script, tree);
+        CompileCache cache = new CompileCache(dir, "test");
+        cache.prune();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test public void testPruneKeepsTouchedFiles() throws ConfigCompileException {
+        String script = "msg('hi')\n";
+        GenericTreeNode<Construct> tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, source));
+        new CompileCache(dir, "test").putTree(source, script, tree);
+        CompileCache cache = new CompileCache(dir, "test");
+        cache.touchTree(source);
+        cache.prune();
+        assertEquals(1, dir.listFiles().length);
+        assertNotNull(cache.getTree(source, script));
+    }
+}
@@ -0,0 +1,146 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CBoolean;
+import com.laytonsmith.core.constructs.CDouble;
+import com.laytonsmith.core.constructs.CEntry;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CLabel;
+import com.laytonsmith.core.constructs.CNull;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.CVoid;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Construct.ConstructType;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.IVariableList;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Function;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the way Script.eval used to gather the arguments of a function call (into an
+ * ArrayList, then through toArray and a copy into a Construct[], checking the type and the
+ * flags once per argument) with the way it does now, filling the Construct[] directly. Both
+ * evaluate the same tree of nested add() calls, and call the function directly, so only the
+ * argument handling differs. Like LexerBenchmark, this isn't a unit test; run it directly,
+ * optionally passing the depth of the tree and the number of times to evaluate it.
+ * @author Layton
+ */
+public class EvalBenchmark {
+
+    private static final Target t = Target.UNKNOWN;
+    private static final int ARGS_PER_CALL = 3;
+
+    /**
+     * The argument handling in Script.eval, as it was before. Variables are looked up the
+     * same way as in evalNew, so that only the argument handling is compared.
+     */
+    private static Construct evalOld(GenericTreeNode<Construct> c, Env env) throws Exception {
+        Construct m = c.getData();
+        if (m.getCType() != ConstructType.FUNCTION) {
+            return m;
+        }
+        Function f = ((CFunction) m).getFunction();
+        ArrayList<Construct> args = new ArrayList<Construct>();
+        for (GenericTreeNode<Construct> c2 : c.getChildren()) {
+            args.add(evalOld(c2, env));
+        }
+        Object[] a = args.toArray();
+        Construct[] ca = new Construct[a.length];
+        for (int i = 0; i < a.length; i++) {
+            ca[i] = (Construct) a[i];
+            if (!(ca[i] instanceof CArray || ca[i] instanceof CBoolean || ca[i] instanceof CDouble
+                    || ca[i] instanceof CInt || ca[i] instanceof CNull
+                    || ca[i] instanceof CString || ca[i] instanceof CVoid
+                    || ca[i] instanceof IVariable || ca[i] instanceof CEntry || ca[i] instanceof CLabel)
+                    && (!f.getName().equals("__autoconcat__") && (ca[i] instanceof CLabel))) {
+                throw new ConfigRuntimeException("Invalid Construct (" + ca[i].getClass()
+                        + ") being passed as an argument to a function (" + f.getName() + ")", null, m.getTarget());
+            }
+            if (env.GetFlag("array_get_alt_mode") == Boolean.TRUE && i == 0) {
+                continue;
+            }
+            if (f.preResolveVariables() && ca[i] instanceof IVariable) {
+                IVariable cur = (IVariable) ca[i];
+                ca[i] = env.GetVarList().get(cur).ival();
+            }
+        }
+        return f.exec(m.getTarget(), env, ca);
+    }
+
+    /**
+     * The argument handling in Script.eval, as it is now.
+     */
+    private static Construct evalNew(GenericTreeNode<Construct> c, Env env) throws Exception {
+        Construct m = c.getData();
+        if (m.getCType() != ConstructType.FUNCTION) {
+            return m;
+        }
+        Function f = ((CFunction) m).getFunction();
+        List<GenericTreeNode<Construct>> children = c.getChildren();
+        int size = children.size();
+        Construct[] ca = new Construct[size];
+        for (int i = 0; i < size; i++) {
+            ca[i] = evalNew(children.get(i), env);
+        }
+        if (f.preResolveVariables()) {
+            int start = env.GetFlag("array_get_alt_mode") == Boolean.TRUE ? 1 : 0;
+            for (int i = start; i < size; i++) {
+                if (ca[i] instanceof IVariable) {
+                    IVariable cur = (IVariable) ca[i];
+                    ca[i] = env.GetVarList().get(cur).ival();
+                }
+            }
+        }
+        return f.exec(m.getTarget(), env, ca);
+    }
+
+    /**
+     * Builds add(add(...), @x, add(...)) down to the given depth, with ints at the bottom.
+     */
+    private static GenericTreeNode<Construct> tree(int depth) {
+        if (depth == 0) {
+            return new GenericTreeNode<Construct>(new CInt(1, t));
+        }
+        GenericTreeNode<Construct> node = new GenericTreeNode<Construct>(new CFunction("add", t));
+        for (int i = 0; i < ARGS_PER_CALL; i++) {
+            if (i == 1) {
+                node.addChild(new GenericTreeNode<Construct>(new IVariable("@x", t)));
+            } else {
+                node.addChild(tree(depth - 1));
+            }
+        }
+        return node;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Env env = new Env();
+        env.SetVarList(new IVariableList());
+        env.GetVarList().set(new IVariable("@x", new CInt(2, t), t));
+        GenericTreeNode<Construct> root = tree(depth);
+        int calls = (1 << depth) - 1;
+        for (int pass = 0; pass < 2; pass++) {
+            //The first pass warms up both paths, so the second is timing the compiled code
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                evalOld(root, env);
+            }
+            double oldNanos = (System.nanoTime() - start) / (double) runs / calls;
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                evalNew(root, env);
+            }
+            double newNanos = (System.nanoTime() - start) / (double) runs / calls;
+            if (pass == 1) {
+                System.out.println("Evaluating " + calls + " nested calls, " + runs + " times");
+                System.out.println(String.format("%-28s %8.1f ns per call", "ArrayList and toArray", oldNanos));
+                System.out.println(String.format("%-28s %8.1f ns per call", "Construct[] filled directly", newNanos));
+            }
+        }
+    }
+}
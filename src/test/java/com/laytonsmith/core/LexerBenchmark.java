@@ -0,0 +1,43 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+
+/**
+ * Measures how fast MethodScriptCompiler.lex gets through a large config. This isn't
+ * a unit test, so it isn't run with the rest of the tests; run it directly, optionally
+ * passing the size of the config to generate, in megabytes.
+ * @author Layton
+ */
+public class LexerBenchmark {
+
+    private static final String ALIAS = "/cmd $player [$amount=1] = >>>\r\n"
+            + "    # give things to people\r\n"
+            + "    assign(@p, player($player))\r\n"
+            + "    if(@amount > 0 && is_integer(@amount), msg('Giving ' . @amount . ' to \\'' . @p . '\\''), die('no'))\r\n"
+            + "    /* block\r\n"
+            + "       comment */\r\n"
+            + "    foreach(@arr[1..-1], @v, store_value('ns.' . @p, @v + -2 * 3.5))\r\n"
+            + "<<<\r\n";
+
+    public static void main(String[] args) throws ConfigCompileException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        StringBuilder b = new StringBuilder(megabytes * 1024 * 1024 + ALIAS.length());
+        while (b.length() < megabytes * 1024 * 1024) {
+            b.append(ALIAS);
+        }
+        String config = b.toString();
+        //Warm up first, so we're timing the compiled code
+        for (int i = 0; i < 3; i++) {
+            MethodScriptCompiler.lex(config, null);
+        }
+        int runs = 5;
+        long start = System.nanoTime();
+        int tokens = 0;
+        for (int i = 0; i < runs; i++) {
+            tokens = MethodScriptCompiler.lex(config, null).size();
+        }
+        double seconds = (System.nanoTime() - start) / 1000000000.0 / runs;
+        System.out.println(String.format("%d chars, %d tokens: %.3f s per run, %.2f MB/s",
+                config.length(), tokens, seconds, megabytes / seconds));
+    }
+}
@@ -7,6 +7,7 @@ package com.laytonsmith.core;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.abstraction.MCServer;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.constructs.CFunction;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.constructs.Token;
 import com.laytonsmith.core.constructs.Variable;
@@ -464,6 +465,27 @@ public class MethodScriptCompilerTest {
         s2.run(Arrays.asList(new Variable("$var", "hello", Target.UNKNOWN)), env, null);
         verify(fakePlayer, times(2)).sendMessage("success");
     }
+    
+    @Test
+    public void testDollarVarsArePerRun() throws ConfigCompileException{
+        AliasCore ac = mock(AliasCore.class);
+        ac.autoIncludes = new ArrayList<File>();
+        PowerMockito.mockStatic(CommandHelperPlugin.class);
+        when(CommandHelperPlugin.getCore()).thenReturn(ac);
+        Script s = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex("/cmd $x = msg($x)", null), env).get(0);
+        s.compile();
+        Env first = new Env();
+        first.SetPlayer(fakePlayer);
+        Env second = new Env();
+        second.SetPlayer(fakePlayer);
+        s.run(s.getVariables("/cmd one"), first, null);
+        s.run(s.getVariables("/cmd two"), second, null);
+        verify(fakePlayer).sendMessage("one");
+        verify(fakePlayer).sendMessage("two");
+        //The values are bound to each run's environment, not to the shared tree
+        assertEquals("one", first.GetDollarVars().get("$x"));
+        assertEquals("two", second.GetDollarVars().get("$x"));
+    }
 
     @Test
     public void testCompile2() {
@@ -846,4 +868,12 @@ public class MethodScriptCompilerTest {
         }
     }
     
+    @Test
+    public void testProcedureNamesAreRecognized(){
+        assertTrue(new CFunction("_proc", Target.UNKNOWN).isProcedure());
+        assertFalse(new CFunction("__autoconcat__", Target.UNKNOWN).isProcedure());
+        assertFalse(new CFunction("msg", Target.UNKNOWN).isProcedure());
+        assertFalse(new CFunction("_", Target.UNKNOWN).isProcedure());
+    }
+    
 }
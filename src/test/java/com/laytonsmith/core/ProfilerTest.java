@@ -0,0 +1,79 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.testing.StaticTest;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class ProfilerTest {
+
+    MCPlayer fakePlayer;
+
+    @Before
+    public void setUp() {
+        fakePlayer = StaticTest.GetOnlinePlayer();
+        Profiler.Reset();
+        Profiler.SetEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        Profiler.SetEnabled(false);
+        Profiler.Reset();
+    }
+
+    private static Profiler.Stat find(Profiler.Kind kind, String name) {
+        for (Map.Entry<String, Profiler.Stat> e : Profiler.GetStats(kind)) {
+            if (e.getKey().equals(name)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Test public void testSelfTimeExcludesChildren() throws InterruptedException {
+        Profiler.Frame outer = Profiler.Start();
+        Profiler.Frame inner = Profiler.Start();
+        Thread.sleep(20);
+        Profiler.Stop(inner, Profiler.Kind.FUNCTION, "inner");
+        Profiler.Stop(outer, Profiler.Kind.ALIAS, "outer");
+        Profiler.Stat o = find(Profiler.Kind.ALIAS, "outer");
+        Profiler.Stat i = find(Profiler.Kind.FUNCTION, "inner");
+        assertEquals(1, o.getCalls());
+        assertTrue(o.getTotal() >= i.getTotal());
+        assertTrue(o.getSelf() < i.getSelf());
+        assertEquals(i.getTotal(), i.getSelf());
+    }
+
+    @Test public void testOffRecordsNothing() {
+        Profiler.SetEnabled(false);
+        Profiler.Frame f = Profiler.Start();
+        assertNull(f);
+        Profiler.Stop(f, Profiler.Kind.FUNCTION, "nothing");
+        assertTrue(Profiler.GetStats(Profiler.Kind.FUNCTION).isEmpty());
+    }
+
+    @Test public void testScriptsAreProfiled() throws ConfigCompileException {
+        StaticTest.SRun("proc(_inc, @a, return(add(@a, 1))) msg(_inc(1)) msg(_inc(2))", fakePlayer);
+        assertEquals(2, find(Profiler.Kind.PROCEDURE, "_inc").getCalls());
+        assertEquals(2, find(Profiler.Kind.FUNCTION, "add").getCalls());
+        assertTrue(Profiler.Report(10).contains("_inc"));
+    }
+
+    @Test public void testGeneratedScriptsAreNotAliases() throws ConfigCompileException {
+        Env env = new Env();
+        env.SetCommandSender(fakePlayer);
+        Script s = Script.GenerateScript(MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg('hi')", null)), null);
+        s.run(null, env, null);
+        assertTrue(Profiler.GetStats(Profiler.Kind.ALIAS).isEmpty());
+        assertEquals(1, find(Profiler.Kind.FUNCTION, "msg").getCalls());
+    }
+}
@@ -0,0 +1,109 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.testing.StaticTest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class TaskSchedulerTest {
+
+    List<String> ran;
+
+    @Before
+    public void setUp() throws Exception {
+        StaticTest.InstallFakeConvertor(StaticTest.GetOnlinePlayer());
+        TaskScheduler.CancelAll();
+        ran = new ArrayList<String>();
+    }
+
+    @After
+    public void tearDown() {
+        TaskScheduler.CancelAll();
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+
+    private static long later() {
+        return System.currentTimeMillis() + 1000;
+    }
+
+    @Test public void testBudgetSpreadsTasksOverTicks() {
+        TaskScheduler.Schedule(0, 0, false, record("a"));
+        TaskScheduler.Schedule(0, 0, false, record("b"));
+        TaskScheduler.Schedule(0, 0, false, record("c"));
+        //With no budget at all, one task still runs each tick
+        TaskScheduler.Tick(later(), 0);
+        assertEquals(Arrays.asList("a"), ran);
+        TaskScheduler.Tick(later(), Long.MAX_VALUE);
+        assertEquals(Arrays.asList("a", "b", "c"), ran);
+        assertEquals(0, TaskScheduler.Size());
+    }
+
+    @Test public void testNothingRunsEarly() {
+        TaskScheduler.Schedule(60000, 0, false, record("a"));
+        TaskScheduler.Tick(later(), Long.MAX_VALUE);
+        assertTrue(ran.isEmpty());
+        assertEquals(1, TaskScheduler.Size());
+    }
+
+    @Test public void testIntervalsRunAgainUntilCancelled() {
+        int id = TaskScheduler.Schedule(0, 100, false, record("a"));
+        long now = later();
+        TaskScheduler.Tick(now, Long.MAX_VALUE);
+        TaskScheduler.Tick(now, Long.MAX_VALUE);
+        assertEquals(1, ran.size());
+        TaskScheduler.Tick(now + 100, Long.MAX_VALUE);
+        assertEquals(2, ran.size());
+        TaskScheduler.Cancel(id);
+        TaskScheduler.Tick(now + 1000, Long.MAX_VALUE);
+        assertEquals(2, ran.size());
+        assertEquals(0, TaskScheduler.Size());
+    }
+
+    @Test public void testIntervalCanCancelItself() {
+        final int[] id = new int[1];
+        id[0] = TaskScheduler.Schedule(0, 1, false, new Runnable() {
+
+            public void run() {
+                ran.add("a");
+                TaskScheduler.Cancel(id[0]);
+            }
+        });
+        long now = later();
+        TaskScheduler.Tick(now, Long.MAX_VALUE);
+        TaskScheduler.Tick(now + 1000, Long.MAX_VALUE);
+        assertEquals(1, ran.size());
+    }
+
+    @Test public void testReservedIdIsUsed() {
+        final int id = TaskScheduler.NewId();
+        TaskScheduler.Schedule(id, 0, 1, false, new Runnable() {
+
+            public void run() {
+                ran.add("a");
+                TaskScheduler.Cancel(id);
+            }
+        });
+        assertEquals(1, TaskScheduler.Size());
+        long now = later();
+        TaskScheduler.Tick(now, Long.MAX_VALUE);
+        TaskScheduler.Tick(now + 1000, Long.MAX_VALUE);
+        assertEquals(1, ran.size());
+        assertEquals(0, TaskScheduler.Size());
+    }
+}
@@ -3,6 +3,7 @@ package com.laytonsmith.core.events;
 
 import com.laytonsmith.PureUtilities.SerializedPersistance;
 import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.abstraction.events.MCPlayerCommandEvent;
 import com.laytonsmith.abstraction.events.MCPlayerJoinEvent;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
 import com.laytonsmith.core.Static;
@@ -92,4 +93,37 @@ public class GeneralTest {
         inOrder.verify(fakePlayer).sendMessage("{join_message: player joined, player: " + name + "}");
     }
     
+    @Test
+    public void testIndexedDispatch() throws ConfigCompileException{
+        String name = fakePlayer.getName();
+        String script = ""
+                + "bind(player_command, array(priority: low), array(player: '" + name + "'), @e, msg('mine'))"
+                + "bind(player_command, null, array(player: 'someone_else'), @e, msg('other'))"
+                + "bind(player_command, array(priority: high), array(player: '/.*/'), @e, msg('regex'))";
+        SRun(script, null);
+        MCPlayerCommandEvent mcpce = mock(MCPlayerCommandEvent.class);
+        when(mcpce.getPlayer()).thenReturn(fakePlayer);
+        when(mcpce.getCommand()).thenReturn("/cmd");
+        EventUtils.TriggerListener(Driver.PLAYER_COMMAND, "player_command", mcpce);
+        InOrder inOrder = Mockito.inOrder(fakePlayer);
+        inOrder.verify(fakePlayer).sendMessage("regex");
+        inOrder.verify(fakePlayer).sendMessage("mine");
+        verify(fakePlayer, times(0)).sendMessage("other");
+    }
+    
+    @Test
+    public void testHandlersGetTheirOwnEventObject() throws ConfigCompileException{
+        String script = ""
+                + "bind(player_join, array(priority: high), null, @e, array_set(@e, 'join_message', 'changed') msg(@e['join_message']))"
+                + "bind(player_join, array(priority: low), null, @e, msg(@e['join_message']))";
+        SRun(script, null);
+        MCPlayerJoinEvent mcpje = mock(MCPlayerJoinEvent.class);
+        when(mcpje.getPlayer()).thenReturn(fakePlayer);
+        when(mcpje.getJoinMessage()).thenReturn("joined");
+        EventUtils.TriggerListener(Driver.PLAYER_JOIN, "player_join", mcpje);
+        InOrder inOrder = Mockito.inOrder(fakePlayer);
+        inOrder.verify(fakePlayer).sendMessage("changed");
+        inOrder.verify(fakePlayer).sendMessage("joined");
+    }
+    
 }
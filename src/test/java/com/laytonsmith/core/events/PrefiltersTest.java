@@ -148,4 +148,32 @@ public class PrefiltersTest {
         } catch (PrefilterNonMatchException e) {
         }
     }
+    
+    @Test public void testCompiledPrefilters(){
+        Map<String, Construct> map = new Prefilters.PrefilterMap();
+        map.put("x", C.String("/1|2|3/"));
+        map.put("y", C.String("(max(y, 3) > 4)"));
+        map.put("item", C.String("35:2"));
+        try {
+            Prefilters.match(map, "x", C.Int(3), PrefilterType.REGEX);
+            Prefilters.match(map, "x", C.Int(3), PrefilterType.MACRO);
+            Prefilters.match(map, "y", 5, PrefilterType.EXPRESSION);
+            Prefilters.match(map, "item", "35:4", PrefilterType.ITEM_MATCH);
+            Prefilters.match(map, "missing", "anything", PrefilterType.STRING_MATCH);
+        } catch (PrefilterNonMatchException e) {
+            fail("Expected a match here");
+        }
+        try {
+            Prefilters.match(map, "y", 4, PrefilterType.EXPRESSION);
+            fail("Did not expect a match here");
+        } catch (PrefilterNonMatchException e) {
+        }
+        //Replacing a prefilter recompiles it
+        map.put("x", C.String("/4/"));
+        try {
+            Prefilters.match(map, "x", C.Int(3), PrefilterType.REGEX);
+            fail("Did not expect a match here");
+        } catch (PrefilterNonMatchException e) {
+        }
+    }
 }
@@ -10,6 +10,7 @@ import com.laytonsmith.core.Env;
 import com.laytonsmith.core.constructs.CArray;
 import com.laytonsmith.core.constructs.CBoolean;
 import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.Construct;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.exceptions.CancelCommandException;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
@@ -232,6 +233,19 @@ public class BasicLogicTest {
         assertCFalse(a.exec(Target.UNKNOWN, env, arg1_1, argn1_1));
     }
 
+    @Test(timeout = 10000)
+    public void testLargeIntegers() throws CancelCommandException {
+        //These differ by one, but are the same once they're converted to doubles
+        Construct a = C.onstruct(9007199254740993L);
+        Construct b = C.onstruct(9007199254740992L);
+        assertCFalse(new BasicLogic.equals().exec(Target.UNKNOWN, env, a, b));
+        assertCTrue(new BasicLogic.lt().exec(Target.UNKNOWN, env, b, a));
+        assertCTrue(new BasicLogic.gt().exec(Target.UNKNOWN, env, a, b));
+        assertCFalse(new BasicLogic.lte().exec(Target.UNKNOWN, env, a, b));
+        assertCTrue(new BasicLogic.gte().exec(Target.UNKNOWN, env, a, a));
+        assertCTrue(new BasicLogic.equals().exec(Target.UNKNOWN, env, C.onstruct(Double.NaN), C.onstruct(Double.NaN)));
+    }
+
     @Test(timeout = 10000)
     public void testLte() throws CancelCommandException {
         BasicLogic.lte a = new BasicLogic.lte();
@@ -129,6 +129,19 @@ public class DataHandlingTest {
         verify(fakePlayer).sendMessage("2");
     }
 
+    @Test(timeout = 10000)
+    public void testForeachAssociative() throws ConfigCompileException{
+        SRun("assign(@array, array(a: 1, b: 2, c: 3))"
+                + " assign(@out, array())"
+                + " foreach(@array, @v,"
+                + "     if(equals(@v, 1), array_remove(@array, 'b'))"
+                + "     if(equals(@v, 1), array_set(@array, 'd', 4))"
+                + "     array_push(@out, @v)"
+                + " )"
+                + " msg(@out)", fakePlayer);
+        verify(fakePlayer).sendMessage("{1, 3, 4}");
+    }
+
     @Test(timeout = 10000)
     public void testCallProcIsProc() throws ConfigCompileException {
         when(fakePlayer.isOp()).thenReturn(true);
@@ -241,6 +254,23 @@ public class DataHandlingTest {
         test.delete();
     }
 
+    @Test(timeout = 10000)
+    public void testIncludeSeesEdits() throws Exception {
+        String script =
+                "include('unit_test_inc2.ms')";
+        File test = new File("unit_test_inc2.ms");
+        FileUtility.write("msg('before')", test);
+        MethodScriptCompiler.execute(MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, new File("./script.txt"))), env, null, null);
+        verify(fakePlayer).sendMessage("before");
+        FileUtility.write("msg('after')", test);
+        test.setLastModified(test.lastModified() + 10000);
+        //Cached files are only checked for changes once a second
+        Thread.sleep(1100);
+        MethodScriptCompiler.execute(MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, new File("./script.txt"))), env, null, null);
+        verify(fakePlayer).sendMessage("after");
+        test.delete();
+    }
+
     @Test(timeout = 10000)
     public void testExportImportIVariable() throws ConfigCompileException {
         when(fakePlayer.isOp()).thenReturn(true);
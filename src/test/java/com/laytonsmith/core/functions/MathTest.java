@@ -123,6 +123,16 @@ public class MathTest {
         assertCEquals(C.onstruct(5), a.exec(Target.UNKNOWN, env, C.onstruct(10), C.onstruct(0.5)));
     }
 
+    @Test(timeout = 10000)
+    public void testLargeIntegers() {
+        //2^53 + 1 can't be represented as a double
+        long big = 9007199254740993L;
+        assertCEquals(C.onstruct(big), new Math.add().exec(Target.UNKNOWN, env, C.onstruct(big - 1), C.onstruct(1)));
+        assertCEquals(C.onstruct(big), new Math.subtract().exec(Target.UNKNOWN, env, C.onstruct(big + 1), C.onstruct(1)));
+        assertCEquals(C.onstruct(big), new Math.multiply().exec(Target.UNKNOWN, env, C.onstruct(big), C.onstruct(1)));
+        assertCEquals(C.onstruct(3), new Math.add().exec(Target.UNKNOWN, env, C.onstruct(1), C.onstruct("2")));
+    }
+
     @Test(timeout = 10000)
     public void testPow() {
         Math.pow a = new Math.pow();
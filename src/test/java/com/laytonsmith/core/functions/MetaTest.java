@@ -12,6 +12,7 @@ import com.laytonsmith.core.MethodScriptCompiler;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import static com.laytonsmith.testing.StaticTest.*;
 import com.sk89q.wepif.PermissionsResolverManager;
+import static org.junit.Assert.*;
 import org.junit.*;
 import static org.mockito.Mockito.*;
 
@@ -70,6 +71,16 @@ public class MetaTest {
         SRun("assign(@e, 'msg(\\'Hello World!\\')') eval(@e)", fakePlayer);
         verify(fakePlayer).sendMessage("Hello World!");
     }
+    
+    @Test public void testEvalCache() throws ConfigCompileException{
+        long hits = EvalCache.getHits();
+        SRun("assign(@e, 'msg(\\'cached\\')') eval(@e) eval(@e) eval(@e)", fakePlayer);
+        verify(fakePlayer, times(3)).sendMessage("cached");
+        assertTrue(EvalCache.getHits() >= hits + 2);
+        EvalCache.clearCache();
+        assertEquals(0, EvalCache.size());
+    }
+    
     //:( I can't get this to work right, because AlwaysOpPlayer is different than
     //fakePlayer, so I can't get my test to activate when the function is called.
 //    @Test(timeout=10000)
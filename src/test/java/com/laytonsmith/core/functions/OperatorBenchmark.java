@@ -0,0 +1,116 @@
+package com.laytonsmith.core.functions;
+
+import com.laytonsmith.core.Env;
+import com.laytonsmith.core.constructs.CDouble;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.IVariableList;
+import com.laytonsmith.core.constructs.Target;
+
+/**
+ * Measures how fast the common math and comparison operators run on ints, doubles
+ * and strings. Like LexerBenchmark, this isn't a unit test; run it directly,
+ * optionally passing the number of calls to time per operation.
+ * @author Layton
+ */
+public class OperatorBenchmark {
+
+    private static final Target t = Target.UNKNOWN;
+
+    private static abstract class Op {
+
+        final String name;
+
+        Op(String name) {
+            this.name = name;
+        }
+
+        abstract Construct run();
+    }
+
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        final Env env = new Env();
+        env.SetVarList(new IVariableList());
+        env.GetVarList().set(new IVariable("@i", new CInt(0, t), t));
+        final Construct[] ints = {new CInt(123456, t), new CInt(654321, t)};
+        final Construct[] doubles = {new CDouble(1234.5, t), new CDouble(5432.1, t)};
+        final Construct[] strings = {new CString("abc", t), new CString("abd", t)};
+        final Math.add add = new Math.add();
+        final Math.subtract subtract = new Math.subtract();
+        final Math.multiply multiply = new Math.multiply();
+        final Math.inc inc = new Math.inc();
+        final BasicLogic.lt lt = new BasicLogic.lt();
+        final BasicLogic.equals equals = new BasicLogic.equals();
+        Op[] ops = {
+            new Op("add int") {
+                Construct run() {
+                    return add.exec(t, env, ints);
+                }
+            },
+            new Op("add double") {
+                Construct run() {
+                    return add.exec(t, env, doubles);
+                }
+            },
+            new Op("subtract int") {
+                Construct run() {
+                    return subtract.exec(t, env, ints);
+                }
+            },
+            new Op("multiply int") {
+                Construct run() {
+                    return multiply.exec(t, env, ints);
+                }
+            },
+            new Op("multiply double") {
+                Construct run() {
+                    return multiply.exec(t, env, doubles);
+                }
+            },
+            new Op("lt int") {
+                Construct run() {
+                    return lt.exec(t, env, ints);
+                }
+            },
+            new Op("lt double") {
+                Construct run() {
+                    return lt.exec(t, env, doubles);
+                }
+            },
+            new Op("equals int") {
+                Construct run() {
+                    return equals.exec(t, env, ints);
+                }
+            },
+            new Op("equals double") {
+                Construct run() {
+                    return equals.exec(t, env, doubles);
+                }
+            },
+            new Op("equals string") {
+                Construct run() {
+                    return equals.exec(t, env, strings);
+                }
+            },
+            new Op("inc variable") {
+                Construct run() {
+                    return inc.exec(t, env, new IVariable("@i", t));
+                }
+            },};
+        for (Op op : ops) {
+            //Warm up first, so we're timing the compiled code
+            for (int i = 0; i < calls; i++) {
+                op.run();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                op.run();
+            }
+            double nanos = (System.nanoTime() - start) / (double) calls;
+            System.out.println(String.format("%-16s %8.1f ns per call", op.name, nanos));
+        }
+    }
+}
@@ -372,4 +372,26 @@ public class ArrayTest {
         verify(fakePlayer).sendMessage("0");
     }
 
+    @Test public void testNestedArrayValueUpdatesAfterChange() throws ConfigCompileException{
+        SRun("assign(@inner, array(1))"
+                + " assign(@outer, array(@inner))"
+                + " msg(@outer)"
+                + " array_push(@inner, 2)"
+                + " msg(@outer)", fakePlayer);
+        verify(fakePlayer).sendMessage("{{1}}");
+        verify(fakePlayer).sendMessage("{{1, 2}}");
+    }
+
+    @Test public void testAssociativePushAfterRemovingLargestKey() throws ConfigCompileException{
+        SRun("assign(@a, array(a: 1))"
+                + " array_push(@a, 'x')"
+                + " array_push(@a, 'y')"
+                + " msg(@a)"
+                + " array_remove(@a, 2)"
+                + " array_push(@a, 'z')"
+                + " msg(@a)", fakePlayer);
+        verify(fakePlayer).sendMessage("{1: x, 2: y, a: 1}");
+        verify(fakePlayer).sendMessage("{1: x, 2: z, a: 1}");
+    }
+
 }
@@ -8,6 +8,7 @@ import com.laytonsmith.abstraction.*;
 import com.laytonsmith.abstraction.bukkit.BukkitMCCommandSender;
 import com.laytonsmith.abstraction.bukkit.BukkitMCPlayer;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.Env;
 import com.laytonsmith.core.ObjectGenerator;
 import com.laytonsmith.core.Static;
 import com.laytonsmith.core.api;
@@ -200,6 +201,72 @@ public class RandomTests {
         verify(fakePlayer).sendMessage("1");
     }
     
+    @Test public void testVariableListCloneIsIndependent(){
+        IVariableList original = new IVariableList();
+        original.set(new IVariable("@a", C.Int(1), Target.UNKNOWN));
+        IVariableList clone = original.clone();
+        clone.set(new IVariable("@a", C.Int(2), Target.UNKNOWN));
+        clone.set(new IVariable("@b", C.Int(3), Target.UNKNOWN));
+        IVariable ref = new IVariable("@a", Target.UNKNOWN);
+        assertEquals("1", original.get(ref).val());
+        assertEquals("2", clone.get(ref).val());
+        assertFalse(original.keySet().contains("@b"));
+    }
+    
+    @Test public void testCachedConstructs(){
+        assertSame(CInt.GetCached(5), CInt.GetCached(5));
+        assertNotSame(CInt.GetCached(5000), CInt.GetCached(5000));
+        assertEquals("-128", CInt.GetCached(-128).val());
+        assertEquals("1.5", new CDouble(1.5, Target.UNKNOWN).val());
+        assertEquals("true", CBoolean.GetCached(true).val());
+        //Shared constructs keep their unknown target, even when put in a variable
+        Target t = new Target(5, null, 1);
+        new IVariable("@a", CInt.GetCached(1), t).ival();
+        assertSame(Target.UNKNOWN, CInt.GetCached(1).getTarget());
+        assertSame(t, new IVariable("@a", new CInt(1, Target.UNKNOWN), t).ival().getTarget());
+    }
+    
+    @Test public void testEnvCloneIsIndependent() throws CloneNotSupportedException{
+        Env original = new Env();
+        original.SetFlag("a", true);
+        Env clone = original.clone();
+        clone.SetFlag("a", false);
+        clone.SetCustom("b", "value");
+        clone.GetProcs().put("_proc", null);
+        assertTrue(original.GetFlag("a"));
+        assertFalse(clone.GetFlag("a"));
+        assertNull(original.GetCustom("b"));
+        assertFalse(original.GetProcs().containsKey("_proc"));
+        assertTrue(clone.GetProcs().containsKey("_proc"));
+    }
+    
+    @Test public void testArrayCloneIsIndependent() throws CloneNotSupportedException{
+        CArray original = new CArray(Target.UNKNOWN);
+        original.set("a", C.Int(1));
+        CArray clone = original.clone();
+        CArray second = original.clone();
+        clone.set("a", C.Int(2));
+        clone.set("b", C.Int(3));
+        original.remove(C.String("a"));
+        assertEquals("{a: 2, b: 3}", clone.val());
+        assertEquals("{}", original.val());
+        assertEquals("{a: 1}", second.val());
+    }
+    
+    @Test public void testArrayDeepCloneCopiesNestedArrays() throws CloneNotSupportedException{
+        CArray location = new CArray(Target.UNKNOWN, C.Int(1), C.Int(2), C.Int(3));
+        CArray original = new CArray(Target.UNKNOWN);
+        original.set("location", location);
+        original.set("list", new CArray(Target.UNKNOWN, new CArray(Target.UNKNOWN, C.Int(4))));
+        CArray clone = original.deepClone();
+        ((CArray)clone.get("location")).set(0, C.Int(10));
+        ((CArray)((CArray)clone.get("list")).get(0)).push(C.Int(5));
+        assertEquals("{10, 2, 3}", clone.get("location").val());
+        assertEquals("{{4, 5}}", clone.get("list").val());
+        assertEquals("{1, 2, 3}", location.val());
+        assertEquals("{list: {{4}}, location: {1, 2, 3}}", original.val());
+    }
+    
     @Test 
     public void testCastFromBukkitMCPlayerToBukkitMCCommandSender() throws ConfigCompileException{
         Player p = mock(Player.class);